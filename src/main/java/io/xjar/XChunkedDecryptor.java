@@ -0,0 +1,40 @@
+package io.xjar;
+
+import io.xjar.key.XKey;
+
+import java.io.*;
+
+/**
+ * 分块解密器，与 {@link XChunkedEncryptor} 对应，分块大小从记录开头读取。
+ *
+ * @author kongweiguang
+ */
+public class XChunkedDecryptor implements XDecryptor {
+
+    @Override
+    public void decrypt(XKey key, File src, File dest) throws IOException {
+        try (
+                InputStream in = new FileInputStream(src);
+                OutputStream out = new FileOutputStream(dest)
+        ) {
+            decrypt(key, in, out);
+        }
+    }
+
+    @Override
+    public void decrypt(XKey key, InputStream in, OutputStream out) throws IOException {
+        try (InputStream dis = decrypt(key, in)) {
+            XKit.transfer(dis, out);
+        }
+    }
+
+    @Override
+    public InputStream decrypt(XKey key, InputStream in) throws IOException {
+        return XChunkedInputStream.decrypt(key, in);
+    }
+
+    @Override
+    public OutputStream decrypt(XKey key, OutputStream out) throws IOException {
+        return XChunkedOutputStream.decrypt(key, out);
+    }
+}
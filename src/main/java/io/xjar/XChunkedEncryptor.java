@@ -0,0 +1,53 @@
+package io.xjar;
+
+import io.xjar.key.XKey;
+
+import java.io.*;
+
+/**
+ * 分块加密器，把明文切分成固定大小的分块，各个分块独立加密，在公共线程池中并行执行。
+ * 适合较大的资源文件，运行时由 {@link XChunkedDecryptor} 同样并行解密，跳过完整的分块也不需要解密。
+ *
+ * @author kongweiguang
+ */
+public class XChunkedEncryptor implements XEncryptor {
+    private final int chunkSize;
+
+    public XChunkedEncryptor() {
+        this(XConstants.DEFAULT_CHUNK_SIZE);
+    }
+
+    public XChunkedEncryptor(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunk size must be positive");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void encrypt(XKey key, File src, File dest) throws IOException {
+        try (
+                InputStream in = new FileInputStream(src);
+                OutputStream out = new FileOutputStream(dest)
+        ) {
+            encrypt(key, in, out);
+        }
+    }
+
+    @Override
+    public void encrypt(XKey key, InputStream in, OutputStream out) throws IOException {
+        try (OutputStream eos = encrypt(key, new XUnclosedOutputStream(out))) {
+            XKit.transfer(in, eos);
+        }
+    }
+
+    @Override
+    public InputStream encrypt(XKey key, InputStream in) throws IOException {
+        return XChunkedInputStream.encrypt(key, in, chunkSize);
+    }
+
+    @Override
+    public OutputStream encrypt(XKey key, OutputStream out) throws IOException {
+        return XChunkedOutputStream.encrypt(key, out, chunkSize);
+    }
+}
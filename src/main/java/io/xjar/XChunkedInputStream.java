@@ -0,0 +1,221 @@
+package io.xjar;
+
+import io.xjar.key.XKey;
+
+import javax.crypto.Cipher;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 分块加/解密的输入流，预先读取后续的若干个分块交给公共线程池并行处理，再按顺序输出。
+ * 读满一个分块后再向后看一个字节，底层流已经结束时该分块就是最后一块。
+ * 解密时跳过最后一块之前的完整分块不需要解密，直接丢弃其密文，最后一块总是解密以校验记录没有被截断；{@link #skip(long)} 返回实际跳过的明文字节数，跳到末尾不足一个分块的部分时也不会少算。
+ *
+ * @author kongweiguang
+ */
+final class XChunkedInputStream extends FilterInputStream {
+    private final XKey key;
+    private final int mode;
+    private final Deque<Chunk> pending = new ArrayDeque<>();
+    private byte[] seed;
+    private int inputSize;
+    private int outputSize;
+    private long index;
+    private boolean eof;
+    private byte[] current;
+    private int position;
+    private byte[] scratch;
+
+    private XChunkedInputStream(InputStream in, XKey key, int mode) {
+        super(new PushbackInputStream(in, 1));
+        this.key = key;
+        this.mode = mode;
+    }
+
+    /**
+     * 加密输入流，先输出记录头再输出各个分块的密文
+     */
+    static XChunkedInputStream encrypt(XKey key, InputStream in, int chunkSize) throws IOException {
+        XChunkedInputStream stream = new XChunkedInputStream(in, key, Cipher.ENCRYPT_MODE);
+        stream.current = XChunks.header(chunkSize);
+        stream.seed = XChunks.seed(stream.current);
+        stream.inputSize = chunkSize;
+        stream.outputSize = XChunks.encryptedSize(key, chunkSize);
+        return stream;
+    }
+
+    /**
+     * 解密输入流，读取记录头后按密文长度切分各个分块
+     */
+    static XChunkedInputStream decrypt(XKey key, InputStream in) throws IOException {
+        XChunkedInputStream stream = new XChunkedInputStream(in, key, Cipher.DECRYPT_MODE);
+        byte[] header = XChunks.header(in);
+        int chunkSize = XChunks.chunkSize(header);
+        stream.seed = XChunks.seed(header);
+        stream.inputSize = XChunks.encryptedSize(key, chunkSize);
+        stream.outputSize = chunkSize;
+        return stream;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!available(true)) {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!available(true)) {
+            return -1;
+        }
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n) {
+            if (current != null && position < current.length) {
+                int k = (int) Math.min(current.length - position, n - skipped);
+                position += k;
+                skipped += k;
+                continue;
+            }
+            if (n - skipped >= outputSize) {
+                Chunk head = pending.peek();
+                if (head != null && head.full) {
+                    pending.poll().future.cancel(false);
+                    skipped += outputSize;
+                    continue;
+                }
+                if (head == null && !eof && skipChunk()) {
+                    skipped += outputSize;
+                    continue;
+                }
+            }
+            if (!available(false)) {
+                break;
+            }
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return current == null ? 0 : current.length - position;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Chunk chunk : pending) {
+            chunk.future.cancel(false);
+        }
+        pending.clear();
+        super.close();
+    }
+
+    /**
+     * 确保当前分块还有剩余数据，需要时取出下一个处理完成的分块
+     *
+     * @param fill 是否在取出分块后继续预读，跳过时不预读以免读取即将被跳过的分块
+     */
+    private boolean available(boolean fill) throws IOException {
+        while (current == null || position >= current.length) {
+            fill(fill ? XChunks.PARALLELISM : 1);
+            Chunk chunk = pending.poll();
+            if (chunk == null) {
+                return false;
+            }
+            current = XChunks.await(chunk.future);
+            position = 0;
+        }
+        return true;
+    }
+
+    private void fill(int ahead) throws IOException {
+        while (!eof && pending.size() < ahead) {
+            byte[] data = in.readNBytes(inputSize);
+            eof = data.length < inputSize || end();
+            if (data.length == 0 && mode == Cipher.DECRYPT_MODE) {
+                // 加密时空记录也有一个明文为空的最后一块，解密时没有读到最后一块说明末尾被截断
+                throw new EOFException("truncated chunked entry");
+            }
+            pending.add(new Chunk(XChunks.submit(key, mode, seed, index++, eof, data, data.length), !eof));
+        }
+    }
+
+    /**
+     * 向后看一个字节判断底层流是否已经结束
+     */
+    private boolean end() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            return true;
+        }
+        ((PushbackInputStream) in).unread(b);
+        return false;
+    }
+
+    /**
+     * 丢弃底层流中的一个完整分块的密文，不解密。底层流无法预先知道剩下的是否还够一个完整分块，
+     * 所以先读出密文而不是直接跳过：读到的是最后一块时照常解密并放入预读队列，由调用方按实际的明文长度跳过。
+     *
+     * @return 丢弃了一个完整分块: {@code true} 已到达最后一块: {@code false}
+     */
+    private boolean skipChunk() throws IOException {
+        if (scratch == null) {
+            scratch = new byte[inputSize];
+        }
+        int n = in.readNBytes(scratch, 0, inputSize);
+        if (n == inputSize && !end()) {
+            index++;
+            return true;
+        }
+        eof = true;
+        if (n == 0 && mode == Cipher.DECRYPT_MODE) {
+            throw new EOFException("truncated chunked entry");
+        }
+        byte[] data = Arrays.copyOf(scratch, n);
+        pending.add(new Chunk(XChunks.submit(key, mode, seed, index++, true, data, n), false));
+        return false;
+    }
+
+    private static final class Chunk {
+        private final CompletableFuture<byte[]> future;
+        private final boolean full;
+
+        private Chunk(CompletableFuture<byte[]> future, boolean full) {
+            this.future = future;
+            this.full = full;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package io.xjar;
+
+import io.xjar.key.XKey;
+
+import javax.crypto.Cipher;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 分块加/解密的输出流，写满一个分块后等到后面还有数据写入、确定它不是最后一块时才交给公共线程池处理，
+ * 关闭时处理最后一块，在途的分块达到并行度时按顺序写出最早的分块。
+ *
+ * @author kongweiguang
+ */
+final class XChunkedOutputStream extends FilterOutputStream {
+    private final XKey key;
+    private final int mode;
+    private final Deque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+    private final byte[] header = new byte[XChunks.HEADER_SIZE];
+    private int headerLength;
+    private byte[] seed;
+    private byte[] buffer;
+    private int count;
+    private long index;
+    private boolean closed;
+
+    private XChunkedOutputStream(OutputStream out, XKey key, int mode) {
+        super(out);
+        this.key = key;
+        this.mode = mode;
+    }
+
+    /**
+     * 加密输出流，立即写出记录头
+     */
+    static XChunkedOutputStream encrypt(XKey key, OutputStream out, int chunkSize) throws IOException {
+        XChunkedOutputStream stream = new XChunkedOutputStream(out, key, Cipher.ENCRYPT_MODE);
+        byte[] header = XChunks.header(chunkSize);
+        out.write(header);
+        stream.seed = XChunks.seed(header);
+        stream.buffer = new byte[chunkSize];
+        return stream;
+    }
+
+    /**
+     * 解密输出流，从写入的数据中先解析记录头
+     */
+    static XChunkedOutputStream decrypt(XKey key, OutputStream out) {
+        return new XChunkedOutputStream(out, key, Cipher.DECRYPT_MODE);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (buffer == null && len > 0) {
+            int n = Math.min(len, header.length - headerLength);
+            System.arraycopy(b, off, header, headerLength, n);
+            headerLength += n;
+            off += n;
+            len -= n;
+            if (headerLength < header.length) {
+                return;
+            }
+            seed = XChunks.seed(header);
+            buffer = new byte[XChunks.encryptedSize(key, XChunks.chunkSize(header))];
+        }
+        while (len > 0) {
+            if (count == buffer.length) {
+                submit(false);
+            }
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (buffer == null) {
+                throw new EOFException("truncated chunked entry header");
+            }
+            // 空记录加密时也写出一个明文为空的最后一块，解密时没有任何分块说明末尾被截断
+            if (count == 0 && mode == Cipher.DECRYPT_MODE) {
+                throw new EOFException("truncated chunked entry");
+            }
+            submit(true);
+            while (!pending.isEmpty()) {
+                out.write(XChunks.await(pending.poll()));
+            }
+        } finally {
+            for (CompletableFuture<byte[]> future : pending) {
+                future.cancel(false);
+            }
+            out.close();
+        }
+    }
+
+    private void submit(boolean last) throws IOException {
+        pending.add(XChunks.submit(key, mode, seed, index++, last, buffer, count));
+        buffer = new byte[buffer.length];
+        count = 0;
+        while (pending.size() > XChunks.PARALLELISM) {
+            out.write(XChunks.await(pending.poll()));
+        }
+    }
+}
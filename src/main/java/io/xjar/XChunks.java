@@ -0,0 +1,154 @@
+package io.xjar;
+
+import io.xjar.key.XKey;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 分块加密格式的公共部分。记录以4字节的分块大小和16字节的随机种子开头，后面是各个分块的密文，
+ * 每个分块使用密钥算法独立加密，向量由密钥向量、随机种子、分块序号和是否最后一块派生，因此分块之间可以并行加/解密，
+ * 不同记录的分块也不会使用相同的向量，认证加密算法同样适用。
+ * 除最后一块外每个分块的明文长度都等于分块大小，密文长度也就固定，不需要额外记录每个分块的长度。
+ * 最后一块总是存在，空记录也有一个明文为空的最后一块；由于最后一块的向量不同，使用认证加密算法时截掉末尾整数个分块的密文无法通过认证。
+ *
+ * @author kongweiguang
+ */
+final class XChunks {
+    /**
+     * 同时在途的分块数量
+     */
+    static final int PARALLELISM = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), 8));
+    static final int SEED_SIZE = 16;
+    static final int HEADER_SIZE = 4 + SEED_SIZE;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private XChunks() {
+    }
+
+    /**
+     * 生成记录头：分块大小和随机种子
+     */
+    static byte[] header(int chunkSize) {
+        byte[] header = new byte[HEADER_SIZE];
+        header[0] = (byte) (chunkSize >>> 24);
+        header[1] = (byte) (chunkSize >>> 16);
+        header[2] = (byte) (chunkSize >>> 8);
+        header[3] = (byte) chunkSize;
+        byte[] seed = new byte[SEED_SIZE];
+        RANDOM.nextBytes(seed);
+        System.arraycopy(seed, 0, header, 4, SEED_SIZE);
+        return header;
+    }
+
+    /**
+     * 读取记录头
+     */
+    static byte[] header(InputStream in) throws IOException {
+        byte[] header = in.readNBytes(HEADER_SIZE);
+        if (header.length < HEADER_SIZE) {
+            throw new EOFException("truncated chunked entry header");
+        }
+        chunkSize(header);
+        return header;
+    }
+
+    /**
+     * @return 记录头中的分块大小
+     */
+    static int chunkSize(byte[] header) throws IOException {
+        int chunkSize = (header[0] & 0xFF) << 24 | (header[1] & 0xFF) << 16 | (header[2] & 0xFF) << 8 | (header[3] & 0xFF);
+        if (chunkSize <= 0) {
+            throw new IOException("illegal chunk size: " + chunkSize);
+        }
+        return chunkSize;
+    }
+
+    /**
+     * @return 记录头中的随机种子
+     */
+    static byte[] seed(byte[] header) {
+        return Arrays.copyOfRange(header, 4, HEADER_SIZE);
+    }
+
+    /**
+     * 派生分块的向量：SHA-256(密钥向量 || 随机种子 || 分块序号 || 是否最后一块) 截取算法所需的长度
+     */
+    static byte[] iv(XKey key, byte[] seed, long index, boolean last) throws GeneralSecurityException {
+        byte[] iv = key.getIvParameter();
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(iv);
+        digest.update(seed);
+        for (int i = 7; i >= 0; i--) {
+            digest.update((byte) (index >>> (i * 8)));
+        }
+        digest.update((byte) (last ? 1 : 0));
+        byte[] hash = digest.digest();
+        byte[] derived = new byte[XCipherEngine.nonceSize(key.getAlgorithm(), iv)];
+        System.arraycopy(hash, 0, derived, 0, Math.min(hash.length, derived.length));
+        return derived;
+    }
+
+    /**
+     * @return 一个完整分块加密后的长度
+     */
+    static int encryptedSize(XKey key, int chunkSize) throws IOException {
+        try {
+            return cipher(key, Cipher.ENCRYPT_MODE, new byte[SEED_SIZE], 0, false).getOutputSize(chunkSize);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * 在公共线程池中加/解密一个分块，公共线程池没有并行度时直接在当前线程执行
+     */
+    static CompletableFuture<byte[]> submit(XKey key, int mode, byte[] seed, long index, boolean last, byte[] data, int length) {
+        if (ForkJoinPool.getCommonPoolParallelism() <= 1) {
+            try {
+                return CompletableFuture.completedFuture(cipher(key, mode, seed, index, last).doFinal(data, 0, length));
+            } catch (GeneralSecurityException e) {
+                return CompletableFuture.failedFuture(new UncheckedIOException(new IOException(e)));
+            }
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return cipher(key, mode, seed, index, last).doFinal(data, 0, length);
+            } catch (GeneralSecurityException e) {
+                throw new UncheckedIOException(new IOException(e));
+            }
+        }, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 等待分块加/解密完成
+     */
+    static byte[] await(CompletableFuture<byte[]> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    private static Cipher cipher(XKey key, int mode, byte[] seed, long index, boolean last) throws GeneralSecurityException {
+        String algorithm = key.getAlgorithm();
+        byte[] secret = mode == Cipher.ENCRYPT_MODE ? key.getEncryptKey() : key.getDecryptKey();
+        Cipher cipher = Cipher.getInstance(algorithm);
+        cipher.init(mode, new SecretKeySpec(secret, XCipherEngine.keyAlgorithm(algorithm)), XCipherEngine.parameters(algorithm, iv(key, seed, index, last)));
+        return cipher;
+    }
+}
@@ -0,0 +1,450 @@
+package io.xjar;
+
+import io.xjar.key.XKey;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 密码引擎，按密钥缓存解析好的算法名称和密钥参数，并用无锁队列池化 {@link Cipher} 实例，
+ * 使得每加/解密一个资源不再需要经过 {@link Cipher#getInstance(String)} 查找提供者和解析算法字符串。
+ * 通过 {@link #wrap(XKey, InputStream)} 或 {@link #wrap(XKey, OutputStream)} 包装的流在关闭时会将 {@link Cipher} 归还到池中，
+ * 通过 {@link #doFinal(XKey, ByteBuffer, ByteBuffer)} 等一次性加/解密时直接调用 {@link Cipher#doFinal(ByteBuffer, ByteBuffer)}，用完立即归还。
+ * 认证加密算法（AES/GCM、ChaCha20-Poly1305）不能重复使用同一个随机数，所以每个记录的密文前都有一个随机生成的随机数，
+ * 密文末尾是认证标签，被篡改的记录在解密时抛出异常。
+ *
+ * @author kongweiguang
+ */
+public class XCipherEngine {
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+    private static final int NONCE_SIZE = 12;
+    private static final int TAG_SIZE = 128;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final int mode;
+    private final Map<XKey, Spec> specs = Collections.synchronizedMap(new WeakHashMap<>());
+    private volatile Spec last;
+
+    /**
+     * @param mode {@link Cipher#ENCRYPT_MODE} 或 {@link Cipher#DECRYPT_MODE}
+     */
+    public XCipherEngine(int mode) {
+        if (mode != Cipher.ENCRYPT_MODE && mode != Cipher.DECRYPT_MODE) {
+            throw new IllegalArgumentException("unsupported cipher mode: " + mode);
+        }
+        this.mode = mode;
+    }
+
+    /**
+     * 从池中取出一个已按密钥初始化的 {@link Cipher}，池为空时新建。
+     * 认证加密算法的 {@link Cipher} 没有初始化，调用方需要按每个记录的随机数初始化。
+     *
+     * @param key 密钥
+     * @return 已初始化的 {@link Cipher}
+     * @throws GeneralSecurityException 算法或密钥异常
+     */
+    public Cipher acquire(XKey key) throws GeneralSecurityException {
+        return acquire(spec(key));
+    }
+
+    /**
+     * 将 {@link Cipher} 归还到池中，池已满时丢弃。
+     *
+     * @param key    密钥
+     * @param cipher 通过 {@link #acquire(XKey)} 取得的 {@link Cipher}
+     */
+    public void release(XKey key, Cipher cipher) {
+        release(spec(key), cipher);
+    }
+
+    /**
+     * 将输入流包装成加/解密的输入流，关闭时归还 {@link Cipher}。
+     *
+     * @param key 密钥
+     * @param in  输入流
+     * @return 加/解密的输入流
+     * @throws IOException 算法或密钥异常
+     */
+    public InputStream wrap(XKey key, InputStream in) throws IOException {
+        Spec spec = spec(key);
+        try {
+            Cipher cipher = acquire(spec);
+            if (!spec.aead) {
+                return new XCipherInputStream(in, spec, cipher);
+            }
+            try {
+                byte[] nonce;
+                if (mode == Cipher.ENCRYPT_MODE) {
+                    nonce = new byte[NONCE_SIZE];
+                    RANDOM.nextBytes(nonce);
+                } else {
+                    nonce = in.readNBytes(NONCE_SIZE);
+                    if (nonce.length < NONCE_SIZE) {
+                        throw new EOFException("truncated nonce");
+                    }
+                }
+                cipher.init(mode, spec.secretKey, parameters(key.getAlgorithm(), nonce));
+                InputStream cis = new XCipherInputStream(in, spec, cipher);
+                return mode == Cipher.ENCRYPT_MODE ? new SequenceInputStream(new ByteArrayInputStream(nonce), cis) : cis;
+            } catch (IOException | GeneralSecurityException | RuntimeException e) {
+                release(spec, cipher);
+                throw e;
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * 将输出流包装成加/解密的输出流，关闭时归还 {@link Cipher}。
+     *
+     * @param key 密钥
+     * @param out 输出流
+     * @return 加/解密的输出流
+     * @throws IOException 算法或密钥异常
+     */
+    public OutputStream wrap(XKey key, OutputStream out) throws IOException {
+        Spec spec = spec(key);
+        try {
+            Cipher cipher = acquire(spec);
+            if (!spec.aead) {
+                return new XCipherOutputStream(out, spec, cipher);
+            }
+            if (mode == Cipher.DECRYPT_MODE) {
+                return new XNonceOutputStream(out, key, spec, cipher);
+            }
+            try {
+                byte[] nonce = new byte[NONCE_SIZE];
+                RANDOM.nextBytes(nonce);
+                cipher.init(mode, spec.secretKey, parameters(key.getAlgorithm(), nonce));
+                out.write(nonce);
+                return new XCipherOutputStream(out, spec, cipher);
+            } catch (IOException | GeneralSecurityException | RuntimeException e) {
+                release(spec, cipher);
+                throw e;
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * 一次性加/解密字节数组，输出数组按 {@link Cipher#getOutputSize(int)} 预先分配，只在实际长度更短（如去掉填充）时截断一次。
+     *
+     * @param key 密钥
+     * @param src 源数据
+     * @return 加/解密后的数据
+     * @throws IOException 算法、密钥或数据异常
+     */
+    public byte[] doFinal(XKey key, byte[] src) throws IOException {
+        ByteBuffer dst = doFinal(key, ByteBuffer.wrap(src));
+        byte[] bytes = dst.array();
+        return dst.limit() == bytes.length ? bytes : Arrays.copyOf(bytes, dst.limit());
+    }
+
+    /**
+     * 一次性加/解密源缓冲区中剩余的数据，输出缓冲区按 {@link Cipher#getOutputSize(int)} 预先分配。
+     *
+     * @param key 密钥
+     * @param src 源缓冲区，可以是直接缓冲区
+     * @return 加/解密后的缓冲区，数据从 0 到 limit
+     * @throws IOException 算法、密钥或数据异常
+     */
+    public ByteBuffer doFinal(XKey key, ByteBuffer src) throws IOException {
+        ByteBuffer dst = process(key, src, null);
+        dst.flip();
+        return dst;
+    }
+
+    /**
+     * 一次性把源缓冲区中剩余的数据加/解密到目标缓冲区，两者都可以是直接缓冲区，中间不经过任何拷贝。
+     *
+     * @param key 密钥
+     * @param src 源缓冲区
+     * @param dst 目标缓冲区
+     * @return 写入目标缓冲区的字节数
+     * @throws IOException 算法、密钥或数据异常，或目标缓冲区剩余空间不足
+     */
+    public int doFinal(XKey key, ByteBuffer src, ByteBuffer dst) throws IOException {
+        int position = dst.position();
+        process(key, src, dst);
+        return dst.position() - position;
+    }
+
+    /**
+     * 一次性加/解密，目标缓冲区为 {@code null} 时按输出长度分配。
+     * 出现异常的 {@link Cipher} 状态不确定，不再归还到池中。
+     */
+    private ByteBuffer process(XKey key, ByteBuffer src, ByteBuffer dst) throws IOException {
+        Spec spec = spec(key);
+        try {
+            Cipher cipher = acquire(spec);
+            byte[] nonce = null;
+            if (spec.aead) {
+                nonce = new byte[NONCE_SIZE];
+                if (mode == Cipher.ENCRYPT_MODE) {
+                    RANDOM.nextBytes(nonce);
+                } else if (src.remaining() < NONCE_SIZE) {
+                    throw new EOFException("truncated nonce");
+                } else {
+                    src.get(nonce);
+                }
+                cipher.init(mode, spec.secretKey, parameters(key.getAlgorithm(), nonce));
+            }
+            int prefix = nonce != null && mode == Cipher.ENCRYPT_MODE ? NONCE_SIZE : 0;
+            if (dst == null) {
+                dst = ByteBuffer.allocate(prefix + cipher.getOutputSize(src.remaining()));
+            } else if (dst.remaining() < prefix) {
+                throw new IOException("destination buffer too small: " + dst.remaining() + " < " + prefix);
+            }
+            if (prefix > 0) {
+                dst.put(nonce);
+            }
+            cipher.doFinal(src, dst);
+            release(spec, cipher);
+            return dst;
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * 判断是否是认证加密算法
+     *
+     * @param algorithm 算法名称，如 AES/GCM/NoPadding 或 ChaCha20-Poly1305
+     * @return 认证加密算法: {@code true} 否则: {@code false}
+     */
+    public static boolean isAead(String algorithm) {
+        String upper = algorithm.toUpperCase();
+        return upper.contains("/GCM/") || upper.startsWith("CHACHA20-POLY1305");
+    }
+
+    /**
+     * 取得算法的密钥算法名称，如 AES/GCM/NoPadding 取 AES，ChaCha20-Poly1305 取 ChaCha20。
+     *
+     * @param algorithm 算法名称
+     * @return 密钥算法名称
+     */
+    public static String keyAlgorithm(String algorithm) {
+        int index = algorithm.indexOf('/');
+        String name = index < 0 ? algorithm : algorithm.substring(0, index);
+        return name.toUpperCase().startsWith("CHACHA20") ? "ChaCha20" : name;
+    }
+
+    /**
+     * 按算法构造向量或随机数参数
+     *
+     * @param algorithm 算法名称
+     * @param iv        向量或随机数
+     * @return 算法参数
+     */
+    public static AlgorithmParameterSpec parameters(String algorithm, byte[] iv) {
+        return algorithm.toUpperCase().contains("/GCM/") ? new GCMParameterSpec(TAG_SIZE, iv) : new IvParameterSpec(iv);
+    }
+
+    /**
+     * @param algorithm 算法名称
+     * @param iv        密钥向量
+     * @return 算法每次加密所用的向量或随机数的长度
+     */
+    public static int nonceSize(String algorithm, byte[] iv) {
+        return isAead(algorithm) ? NONCE_SIZE : iv.length;
+    }
+
+    private Spec spec(XKey key) {
+        Spec spec = last;
+        if (spec != null && spec.key.get() == key) {
+            return spec;
+        }
+        spec = specs.computeIfAbsent(key, k -> new Spec(k, mode));
+        last = spec;
+        return spec;
+    }
+
+    private Cipher acquire(Spec spec) throws GeneralSecurityException {
+        Cipher cipher = spec.ciphers.poll();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(spec.transformation);
+        } else {
+            spec.pooled.decrementAndGet();
+        }
+        if (!spec.aead) {
+            cipher.init(mode, spec.secretKey, spec.ivParameter);
+        }
+        return cipher;
+    }
+
+    private void release(Spec spec, Cipher cipher) {
+        if (spec.pooled.incrementAndGet() <= POOL_SIZE) {
+            spec.ciphers.offer(cipher);
+        } else {
+            spec.pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * 单个密钥解析后的参数及其 {@link Cipher} 池
+     */
+    private static final class Spec {
+        private final WeakReference<XKey> key;
+        private final String transformation;
+        private final SecretKeySpec secretKey;
+        private final IvParameterSpec ivParameter;
+        private final boolean aead;
+        private final Queue<Cipher> ciphers = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pooled = new AtomicInteger();
+
+        private Spec(XKey key, int mode) {
+            String algorithm = key.getAlgorithm();
+            byte[] secret = mode == Cipher.ENCRYPT_MODE ? key.getEncryptKey() : key.getDecryptKey();
+            this.key = new WeakReference<>(key);
+            this.transformation = algorithm;
+            this.secretKey = new SecretKeySpec(secret, keyAlgorithm(algorithm));
+            this.ivParameter = new IvParameterSpec(key.getIvParameter());
+            this.aead = isAead(algorithm);
+        }
+    }
+
+    private final class XCipherInputStream extends CipherInputStream {
+        private final Spec spec;
+        private final Cipher cipher;
+        private boolean closed;
+
+        private XCipherInputStream(InputStream in, Spec spec, Cipher cipher) {
+            super(in, cipher);
+            this.spec = spec;
+            this.cipher = cipher;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                release(spec, cipher);
+            }
+        }
+    }
+
+    private final class XCipherOutputStream extends CipherOutputStream {
+        private final Spec spec;
+        private final Cipher cipher;
+        private boolean closed;
+
+        private XCipherOutputStream(OutputStream out, Spec spec, Cipher cipher) {
+            super(out, cipher);
+            this.spec = spec;
+            this.cipher = cipher;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                release(spec, cipher);
+            }
+        }
+    }
+
+    /**
+     * 认证加密算法的解密输出流，先从写入的数据中取出随机数再初始化 {@link Cipher}
+     */
+    private final class XNonceOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final XKey key;
+        private final Spec spec;
+        private final Cipher cipher;
+        private final byte[] nonce = new byte[NONCE_SIZE];
+        private int length;
+        private OutputStream delegate;
+        private boolean closed;
+
+        private XNonceOutputStream(OutputStream out, XKey key, Spec spec, Cipher cipher) {
+            this.out = out;
+            this.key = key;
+            this.spec = spec;
+            this.cipher = cipher;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (delegate == null) {
+                int n = Math.min(len, NONCE_SIZE - length);
+                System.arraycopy(b, off, nonce, length, n);
+                length += n;
+                off += n;
+                len -= n;
+                if (length < NONCE_SIZE) {
+                    return;
+                }
+                try {
+                    cipher.init(mode, spec.secretKey, parameters(key.getAlgorithm(), nonce));
+                } catch (GeneralSecurityException e) {
+                    throw new IOException(e);
+                }
+                delegate = new XCipherOutputStream(out, spec, cipher);
+            }
+            if (len > 0) {
+                delegate.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            (delegate != null ? delegate : out).flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (delegate != null) {
+                delegate.close();
+                return;
+            }
+            try {
+                out.close();
+            } finally {
+                release(spec, cipher);
+            }
+        }
+    }
+}
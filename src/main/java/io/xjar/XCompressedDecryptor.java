@@ -0,0 +1,105 @@
+package io.xjar;
+
+import io.xjar.key.XKey;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.InflaterOutputStream;
+
+/**
+ * 先解密后解压的解密器，与 {@link XCompressedEncryptor} 对应。
+ *
+ * @author kongweiguang
+ */
+public class XCompressedDecryptor extends XWrappedDecryptor {
+
+    public XCompressedDecryptor(XDecryptor xDecryptor) {
+        super(xDecryptor);
+    }
+
+    @Override
+    public void decrypt(XKey key, File src, File dest) throws IOException {
+        try (
+                InputStream in = new FileInputStream(src);
+                OutputStream out = new FileOutputStream(dest)
+        ) {
+            decrypt(key, in, out);
+        }
+    }
+
+    @Override
+    public void decrypt(XKey key, InputStream in, OutputStream out) throws IOException {
+        try (InputStream dis = decrypt(key, in)) {
+            XKit.transfer(dis, out);
+        }
+    }
+
+    @Override
+    public InputStream decrypt(XKey key, InputStream in) throws IOException {
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(xDecryptor.decrypt(key, in), inflater) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    public OutputStream decrypt(XKey key, OutputStream out) throws IOException {
+        Inflater inflater = new Inflater();
+        return xDecryptor.decrypt(key, new InflaterOutputStream(out, inflater) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        });
+    }
+
+    @Override
+    public byte[] decrypt(XKey key, byte[] src) throws IOException {
+        ByteBuffer out = decrypt(key, ByteBuffer.wrap(src));
+        return out.remaining() == out.capacity() ? out.array() : Arrays.copyOf(out.array(), out.remaining());
+    }
+
+    /**
+     * 一次性解密后直接在缓冲区之间解压，源缓冲区可以是映射的只读缓冲区
+     */
+    @Override
+    public ByteBuffer decrypt(XKey key, ByteBuffer src) throws IOException {
+        ByteBuffer compressed = xDecryptor.decrypt(key, src);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteBuffer out = ByteBuffer.allocate(Math.max(compressed.remaining() * 3, 64));
+            while (!inflater.finished()) {
+                if (!out.hasRemaining()) {
+                    out.flip();
+                    out = ByteBuffer.allocate(out.capacity() * 2).put(out);
+                }
+                int n = inflater.inflate(out);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException("truncated compressed entry");
+                }
+            }
+            out.flip();
+            return out;
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
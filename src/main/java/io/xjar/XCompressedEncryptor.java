@@ -0,0 +1,92 @@
+package io.xjar;
+
+import io.xjar.key.XKey;
+
+import java.io.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * 先压缩后加密的加密器，明文经过 DEFLATE 压缩之后再交给被包装的加密器加密，
+ * 加密后的记录应以 STORED 方式写入JAR包，避免再去压缩几乎不可压缩的密文。
+ *
+ * @author kongweiguang
+ */
+public class XCompressedEncryptor extends XWrappedEncryptor {
+    private final int level;
+
+    public XCompressedEncryptor(XEncryptor xEncryptor) {
+        this(xEncryptor, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public XCompressedEncryptor(XEncryptor xEncryptor, int level) {
+        super(xEncryptor);
+        this.level = level;
+    }
+
+    @Override
+    public void encrypt(XKey key, File src, File dest) throws IOException {
+        try (
+                InputStream in = new FileInputStream(src);
+                OutputStream out = new FileOutputStream(dest)
+        ) {
+            encrypt(key, in, out);
+        }
+    }
+
+    @Override
+    public void encrypt(XKey key, InputStream in, OutputStream out) throws IOException {
+        try (OutputStream eos = encrypt(key, new XUnclosedOutputStream(out))) {
+            XKit.transfer(in, eos);
+        }
+    }
+
+    @Override
+    public InputStream encrypt(XKey key, InputStream in) throws IOException {
+        Deflater deflater = new Deflater(level);
+        return xEncryptor.encrypt(key, new DeflaterInputStream(in, deflater) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        });
+    }
+
+    @Override
+    public OutputStream encrypt(XKey key, OutputStream out) throws IOException {
+        Deflater deflater = new Deflater(level);
+        return new DeflaterOutputStream(xEncryptor.encrypt(key, out), deflater) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    public byte[] encrypt(XKey key, byte[] src) throws IOException {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(src);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(src.length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return xEncryptor.encrypt(key, out.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -14,10 +14,37 @@ public interface XConstants {
     String XJAR_SRC_DIR = XConstants.class.getPackage().getName().replace('.', '/') + "/";
     String XJAR_INF_DIR = "XJAR-INF/";
     String XJAR_INF_IDX = "INDEXES.IDX";
+    String XJAR_INF_PROFILE = "PROFILE.LST";
+    String XJAR_INF_IDX_SEPARATOR = "\t";
+    String XJAR_MODE_COMPRESSED = "COMPRESSED";
+    String XJAR_MODE_SEEKABLE = "SEEKABLE";
+    String XJAR_MODE_CHUNKED = "CHUNKED";
     String CRLF = System.getProperty("line.separator");
 
     String DEFAULT_ALGORITHM = "AES/CBC/PKCS5Padding";
+    String ALGORITHM_AES_GCM = "AES/GCM/NoPadding";
+    String ALGORITHM_CHACHA20_POLY1305 = "ChaCha20-Poly1305";
     int DEFAULT_KEYSIZE = 128;
     int DEFAULT_IVSIZE = 128;
+    long DEFAULT_MEMORY = 64L * 1024 * 1024;
+    int DEFAULT_CHUNK_SIZE = 256 * 1024;
+    int DEFAULT_URL_CACHE_CAPACITY = 8192;
+
+    String XJAR_WARMUP = "xjar.warmup";
+    String XJAR_WARMUP_THREADS = "xjar.warmup.threads";
+    String XJAR_WARMUP_CAPACITY = "xjar.warmup.capacity";
+    long DEFAULT_WARMUP_CAPACITY = 64L * 1024 * 1024;
+    String XJAR_PROFILE = "xjar.profile";
+    String XJAR_PREFETCH = "xjar.prefetch";
+    String XJAR_PREFETCH_WINDOW = "xjar.prefetch.window";
+    String XJAR_PREFETCH_CAPACITY = "xjar.prefetch.capacity";
+    int DEFAULT_PREFETCH_WINDOW = 256;
+    long DEFAULT_PREFETCH_CAPACITY = 32L * 1024 * 1024;
+    String XJAR_RESOURCE_CACHE_CAPACITY = "xjar.resource.cache.capacity";
+    String XJAR_RESOURCE_CACHE_TTL = "xjar.resource.cache.ttl";
+    String XJAR_RESOURCE_CACHE_CLASSES = "xjar.resource.cache.classes";
+    long DEFAULT_RESOURCE_CACHE_TTL = 60L * 1000;
+    String XJAR_MMAP = "xjar.mmap";
+    String XJAR_DECRYPT_THREADS = "xjar.decrypt.threads";
 
 }
@@ -0,0 +1,255 @@
+package io.xjar;
+
+import io.xjar.key.XKey;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 增量加密缓存，以记录内容的摘要为键把加密结果保存在磁盘上，原文没有变化的记录在下一次加密时直接拷贝，不再重新加密。
+ * 摘要中混入了密钥指纹、过滤规则指纹、加密模式及缓存格式版本，任意一项变化都不会命中旧的缓存。
+ * 缓存总大小超过容量时按最近使用时间淘汰。
+ * 加密结果的磁盘格式（记录格式、内嵌JAR包中的加密索引等）每次变化都必须递增 {@code VERSION}，否则会命中旧格式的缓存。
+ *
+ * @author kongweiguang
+ */
+public class XEncryptCache {
+    private static final int VERSION = 4;
+    private static final String DATA = ".bin";
+    private static final String PLAIN = ".nop";
+
+    private final Path dir;
+    private final long capacity;
+    private final byte[] namespace;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param dir       缓存目录
+     * @param capacity  缓存容量，字节数
+     * @param key       密钥
+     * @param filter    过滤规则的描述，过滤规则变化时必须随之变化
+     * @param options   加密选项
+     * @throws IOException 创建缓存目录失败
+     */
+    public XEncryptCache(File dir, long capacity, XKey key, String filter, XEncryptOptions options) throws IOException {
+        this.dir = Files.createDirectories(dir.toPath());
+        this.capacity = capacity;
+        MessageDigest digest = sha256();
+        update(digest, "xjar-cache-v" + VERSION);
+        update(digest, key.getAlgorithm() + "/" + key.getKeysize() + "/" + key.getIvsize());
+        digest.update(key.getEncryptKey());
+        digest.update(key.getIvParameter());
+        update(digest, filter == null ? "" : filter);
+        update(digest, options.isCompress() ? XConstants.XJAR_MODE_COMPRESSED : "");
+        update(digest, options.isSeekable() ? XConstants.XJAR_MODE_SEEKABLE : "");
+        update(digest, options.getChunked() > 0 ? XConstants.XJAR_MODE_CHUNKED + options.getChunked() : "");
+        this.namespace = digest.digest();
+    }
+
+    /**
+     * 计算记录的缓存键，直接对压缩后的原始数据做摘要，不需要解压。
+     * 加密结果除了原文还取决于密钥和这条记录实际采用的加密方式，密钥指纹已在构造时混入，加密方式在这里混入，
+     * 内容相同的类文件和资源、或因大小阈值变化而改变了加密模式的记录不会互相命中。
+     *
+     * @param zipFile 原文包
+     * @param entry   记录
+     * @param kind    加密方式，如记录的加密模式，区分不同方式加密的相同内容
+     * @return 缓存键
+     * @throws IOException I/O 异常
+     */
+    public String hash(ZipFile zipFile, ZipArchiveEntry entry, String kind) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(namespace);
+        update(digest, kind);
+        update(digest, entry.getMethod() + "/" + entry.getCrc() + "/" + entry.getSize());
+        byte[] buffer = new byte[8192];
+        try (InputStream in = zipFile.getRawInputStream(entry)) {
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, length);
+            }
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    /**
+     * 查找缓存并计数
+     *
+     * @param hash 缓存键
+     * @return 缓存的加密结果，未命中时返回 {@code null}
+     */
+    public Entry get(String hash) {
+        for (String suffix : new String[]{DATA, PLAIN}) {
+            Path path = dir.resolve(hash + suffix);
+            if (Files.isRegularFile(path)) {
+                try {
+                    Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+                } catch (IOException ignored) {
+                    // 只影响淘汰顺序
+                }
+                hits.incrementAndGet();
+                return new Entry(path, suffix.equals(PLAIN));
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 缓存加密结果
+     *
+     * @param hash   缓存键
+     * @param buffer 加密结果
+     * @throws IOException I/O 异常
+     */
+    public void put(String hash, XSpillBuffer buffer) throws IOException {
+        Path tmp = Files.createTempFile(dir, hash, ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                buffer.writeTo(out);
+            }
+            move(tmp, dir.resolve(hash + DATA));
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * 记录该内容不需要加密
+     *
+     * @param hash 缓存键
+     * @throws IOException I/O 异常
+     */
+    public void putPlain(String hash) throws IOException {
+        Path tmp = Files.createTempFile(dir, hash, ".tmp");
+        try {
+            move(tmp, dir.resolve(hash + PLAIN));
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 按最近使用时间淘汰缓存直到总大小不超过容量
+     *
+     * @return 淘汰的缓存数量
+     * @throws IOException I/O 异常
+     */
+    public int evict() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(dir)) {
+            stream.filter(path -> path.toString().endsWith(DATA) || path.toString().endsWith(PLAIN)).forEach(paths::add);
+        }
+        long size = 0;
+        List<Item> items = new ArrayList<>();
+        for (Path path : paths) {
+            try {
+                Item item = new Item(path, Files.size(path), Files.getLastModifiedTime(path).toMillis());
+                size += item.size;
+                items.add(item);
+            } catch (NoSuchFileException ignored) {
+                // 已被其他进程淘汰
+            }
+        }
+        items.sort(Comparator.comparingLong(item -> item.time));
+        int evicted = 0;
+        for (Item item : items) {
+            if (size <= capacity) {
+                break;
+            }
+            if (Files.deleteIfExists(item.path)) {
+                evicted++;
+            }
+            size -= item.size;
+        }
+        return evicted;
+    }
+
+    /**
+     * @return 命中次数
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return 未命中次数
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static final class Item {
+        private final Path path;
+        private final long size;
+        private final long time;
+
+        private Item(Path path, long size, long time) {
+            this.path = path;
+            this.size = size;
+            this.time = time;
+        }
+    }
+
+    /**
+     * 缓存的加密结果
+     */
+    public static final class Entry {
+        private final Path path;
+        private final boolean plain;
+
+        Entry(Path path, boolean plain) {
+            this.path = path;
+            this.plain = plain;
+        }
+
+        /**
+         * @return 是否不需要加密，此时应原样拷贝原文
+         */
+        public boolean isPlain() {
+            return plain;
+        }
+
+        /**
+         * @return 读取加密结果的输入流
+         * @throws IOException I/O 异常
+         */
+        public InputStream openStream() throws IOException {
+            return new BufferedInputStream(Files.newInputStream(path));
+        }
+    }
+}
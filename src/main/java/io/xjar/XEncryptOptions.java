@@ -0,0 +1,219 @@
+package io.xjar;
+
+import io.xjar.key.XKey;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * 加密选项，由 {@link XEncryption} 构建并传递给各个JAR包加密器。
+ *
+ * @author kongweiguang
+ */
+public class XEncryptOptions {
+    private int threads = 1;
+    private boolean compress = false;
+    private boolean seekable = false;
+    private long chunked = 0;
+    private long memory = XConstants.DEFAULT_MEMORY;
+    private Executor executor;
+    private XEncryptCache cache;
+    private List<String> profile;
+
+    /**
+     * @return 并行加密的线程数，小于等于 1 时按顺序加密
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * 指定并行加密的线程数
+     *
+     * @param threads 线程数，小于等于 1 时按顺序加密
+     * @return {@code this}
+     */
+    public XEncryptOptions threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @return 是否并行加密
+     */
+    public boolean isParallel() {
+        return threads > 1;
+    }
+
+    /**
+     * @return 是否先压缩后加密
+     */
+    public boolean isCompress() {
+        return compress;
+    }
+
+    /**
+     * 指定是否先压缩后加密，开启后加密记录以 STORED 方式写入，运行时解密后再解压。
+     *
+     * @param compress 是否先压缩后加密
+     * @return {@code this}
+     */
+    public XEncryptOptions compress(boolean compress) {
+        this.compress = compress;
+        return this;
+    }
+
+    /**
+     * @return 是否以可跳转的格式加密类文件以外的资源
+     */
+    public boolean isSeekable() {
+        return seekable;
+    }
+
+    /**
+     * 指定是否以可跳转的格式加密类文件以外的资源，开启后这些资源以 CTR 模式加密并以 STORED 方式写入，
+     * 运行时跳过和部分读取都不需要解密前面的内容。类文件总是被完整读取，仍按 {@link #isCompress()} 加密。
+     * CTR 模式没有完整性校验，不能与 AES/GCM、ChaCha20-Poly1305 等认证加密算法的密钥同时使用，加密时由 {@link #check(XKey)} 拒绝；
+     * 需要可跳转的大资源同时保留完整性校验时改用 {@link #chunked(long)}，每个分块都单独认证。
+     *
+     * @param seekable 是否以可跳转的格式加密
+     * @return {@code this}
+     */
+    public XEncryptOptions seekable(boolean seekable) {
+        this.seekable = seekable;
+        return this;
+    }
+
+    /**
+     * @return 分块加密的大小阈值，小于等于 0 时不分块
+     */
+    public long getChunked() {
+        return chunked;
+    }
+
+    /**
+     * 指定分块加密的大小阈值，不小于该大小的类文件以外的资源切分成固定大小的分块独立加密，构建和运行时都并行加/解密。
+     * 分块优先于 {@link #isSeekable()}，跳过完整的分块同样不需要解密。
+     *
+     * @param chunked 大小阈值，字节数，小于等于 0 时不分块
+     * @return {@code this}
+     */
+    public XEncryptOptions chunked(long chunked) {
+        this.chunked = chunked;
+        return this;
+    }
+
+    /**
+     * @return 加密过程中缓冲在内存中的字节数上限
+     */
+    public long getMemory() {
+        return memory;
+    }
+
+    /**
+     * 指定加密过程中缓冲在内存中的字节数上限，超出部分（如较大的内嵌JAR包）溢写到临时文件
+     *
+     * @param memory 字节数
+     * @return {@code this}
+     */
+    public XEncryptOptions memory(long memory) {
+        this.memory = memory;
+        return this;
+    }
+
+    /**
+     * @return 并发加密内嵌JAR包的执行器，未指定时返回 {@code null}
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * 指定并发加密内嵌JAR包的执行器，加密结果仍按原顺序写入加密包，执行器的生命周期由调用方管理。
+     *
+     * @param executor 执行器，为 {@code null} 时按顺序加密
+     * @return {@code this}
+     */
+    public XEncryptOptions executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * @return 增量加密缓存，未指定时返回 {@code null}
+     */
+    public XEncryptCache getCache() {
+        return cache;
+    }
+
+    /**
+     * 指定增量加密缓存，原文没有变化的内嵌JAR包和记录直接使用上一次的加密结果
+     *
+     * @param cache 增量加密缓存，为 {@code null} 时不使用缓存
+     * @return {@code this}
+     */
+    public XEncryptOptions cache(XEncryptCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * @return 启动顺序记录，未指定时返回 {@code null}
+     */
+    public List<String> getProfile() {
+        return profile;
+    }
+
+    /**
+     * 指定启动顺序记录，BOOT-INF/classes 下记录中出现的资源按记录的顺序连续写入加密包，冷启动时对加密包的读取接近顺序读取。
+     * 只对基于随机访问的加密和并行加密生效，从输入流顺序加密时保持原顺序。
+     *
+     * @param profile 按加载顺序排列的资源名称，如 org/example/App.class，为 {@code null} 时保持原顺序
+     * @return {@code this}
+     */
+    public XEncryptOptions profile(List<String> profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    /**
+     * 检查选项与密钥是否兼容，可跳转的格式不能与认证加密算法的密钥同时使用，否则资源会悄悄失去完整性校验。
+     *
+     * @param key 密钥
+     * @throws IllegalArgumentException 选项与密钥不兼容
+     */
+    public void check(XKey key) {
+        if (seekable && XCipherEngine.isAead(key.getAlgorithm())) {
+            throw new IllegalArgumentException("seekable entries are not authenticated and cannot be used with " + key.getAlgorithm() + ", use chunked(long) instead");
+        }
+    }
+
+    /**
+     * 决定记录的加密模式，非默认模式的记录都以 STORED 方式写入
+     *
+     * @param name 记录名称
+     * @param size 记录的原文大小，未知时为 -1
+     * @return {@link XConstants#XJAR_MODE_CHUNKED}、{@link XConstants#XJAR_MODE_SEEKABLE} 或 {@link XConstants#XJAR_MODE_COMPRESSED}，默认模式返回 {@code null}
+     */
+    public String mode(String name, long size) {
+        boolean resource = !name.endsWith(".class");
+        if (resource && chunked > 0 && size >= chunked) {
+            return XConstants.XJAR_MODE_CHUNKED;
+        }
+        if (resource && seekable) {
+            return XConstants.XJAR_MODE_SEEKABLE;
+        }
+        return compress ? XConstants.XJAR_MODE_COMPRESSED : null;
+    }
+
+    /**
+     * 生成加密索引中的一条记录，明文和密文的长度及CRC由加密器在加密过程中补充
+     *
+     * @param name 记录名称
+     * @param mode 加密模式，默认模式为 {@code null}
+     * @return 索引记录
+     */
+    public XIndexEntry index(String name, String mode) {
+        return new XIndexEntry(name, mode);
+    }
+}
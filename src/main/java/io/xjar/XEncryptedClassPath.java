@@ -0,0 +1,139 @@
+package io.xjar;
+
+import io.xjar.jar.XJarEntryMode;
+import io.xjar.key.XKey;
+import io.xjar.reflection.XClassPath;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.security.CodeSource;
+import java.util.jar.Manifest;
+
+/**
+ * 类加载器共用的加密类读取：在类路径中直接定位加密索引中记录的类，只查找一次资源，不再依赖 {@link ClassFormatError} 回退。
+ * 开启内存映射时 STORED 的加密类直接从映射的JAR包中取出密文解密，否则通过JAR包的输入流读取，解密后按索引校验。
+ *
+ * @author kongweiguang
+ */
+public class XEncryptedClassPath {
+    private final XClassPath xClassPath;
+    private final XEntryIndex xEntryIndex;
+    private final XDecryptor xDecryptor;
+    private final XKey xKey;
+    private volatile XMappedClassPath xMappedClassPath;
+
+    public XEncryptedClassPath(XClassPath xClassPath, XEntryIndex xEntryIndex, XDecryptor xDecryptor, XKey xKey) {
+        this.xClassPath = xClassPath;
+        this.xEntryIndex = xEntryIndex;
+        this.xDecryptor = xDecryptor;
+        this.xKey = xKey;
+    }
+
+    /**
+     * 开启或关闭内存映射读取：以 STORED 方式写入的加密类直接从映射的JAR包中取出密文解密，不再经过JAR包的输入流。
+     * 映射在类加载器的整个生命周期内保留，期间JAR包文件不能被截断或替换，否则关闭内存映射并回退到输入流。
+     * 不支持的类路径（如展开的目录、ZIP64 或签名的JAR包）仍然通过输入流读取。
+     *
+     * @param enabled 是否开启
+     */
+    public void mmap(boolean enabled) {
+        this.xMappedClassPath = enabled ? new XMappedClassPath() : null;
+    }
+
+    /**
+     * 定位并解密索引中记录的加密类
+     *
+     * @param path 类资源路径
+     * @return 解密后的类，当该资源实际定位到的类路径中没有被加密时返回 {@code null}
+     * @throws Exception 读取或解密失败
+     */
+    public Entry read(String path) throws Exception {
+        Object resource = xClassPath.getResource(path);
+        if (resource == null) {
+            return null;
+        }
+        URL url = xClassPath.getURL(resource);
+        XIndexEntry index = xEntryIndex.get(url);
+        if (index == null) {
+            return null;
+        }
+        XDecryptor decryptor = XJarEntryMode.decryptor(index.getMode(), xDecryptor);
+        ByteBuffer bytes = decryptMapped(decryptor, url, index);
+        if (bytes == null) {
+            ByteBuffer encrypted;
+            try (InputStream in = xClassPath.getInputStream(resource)) {
+                encrypted = ByteBuffer.wrap(XKit.read(in, index.getLength()));
+            }
+            bytes = decryptor.decrypt(xKey, encrypted);
+        }
+        index.verify(bytes);
+        return new Entry(bytes, resource);
+    }
+
+    /**
+     * 从映射的JAR包中取出 STORED 的加密类的密文
+     *
+     * @return 密文，没有开启内存映射、类路径不支持或长度与索引不符时返回 {@code null}
+     */
+    private ByteBuffer mapped(URL url, XIndexEntry index) {
+        XMappedClassPath mapped = this.xMappedClassPath;
+        ByteBuffer encrypted = mapped != null ? mapped.find(url) : null;
+        return encrypted != null && (index.getLength() < 0 || encrypted.remaining() == index.getLength()) ? encrypted : null;
+    }
+
+    /**
+     * 直接解密映射的JAR包中 STORED 的加密类，映射后JAR包文件被截断或替换时读取映射缓冲区会抛出 {@link InternalError}，
+     * 此时关闭内存映射，由调用方回退到输入流。
+     *
+     * @return 解密后的类字节码，没有映射或映射失效时返回 {@code null}
+     */
+    private ByteBuffer decryptMapped(XDecryptor decryptor, URL url, XIndexEntry index) throws IOException {
+        ByteBuffer encrypted = mapped(url, index);
+        if (encrypted == null) {
+            return null;
+        }
+        try {
+            return decryptor.decrypt(xKey, encrypted);
+        } catch (InternalError e) {
+            this.xMappedClassPath = null;
+            return null;
+        }
+    }
+
+    /**
+     * 解密后的类
+     */
+    public final class Entry {
+        private final ByteBuffer bytes;
+        private final Object resource;
+
+        private Entry(ByteBuffer bytes, Object resource) {
+            this.bytes = bytes;
+            this.resource = resource;
+        }
+
+        /**
+         * @return 解密后的类字节码
+         */
+        public ByteBuffer getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return 类的代码来源
+         */
+        public CodeSource getCodeSource() {
+            return xClassPath.getCodeSource(resource);
+        }
+
+        /**
+         * @return 类所在JAR包的清单文件，没有时返回 {@code null}
+         * @throws IOException I/O 异常
+         */
+        public Manifest getManifest() throws IOException {
+            return xClassPath.getManifest(resource);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package io.xjar;
 
+import io.xjar.boot.XBootProfile;
 import io.xjar.filter.XAllEntryFilter;
 import io.xjar.filter.XAnyEntryFilter;
 import io.xjar.filter.XMixEntryFilter;
@@ -15,9 +16,12 @@ import java.nio.file.StandardCopyOption;
 import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 
 import static io.xjar.XFilters.*;
@@ -40,6 +44,10 @@ public class XEncryption {
     private String validStartDate = "";
     private String validEndDate = "";
     private String code = UUID.randomUUID().toString();
+    private final XEncryptOptions options = new XEncryptOptions();
+    private final List<String> rules = new ArrayList<>();
+    private File cacheDir = null;
+    private long cacheCapacity = 0;
 
     /**
      * 指定原文包路径
@@ -103,6 +111,7 @@ public class XEncryption {
      */
     public XEncryption include(String ant) {
         includes.mix(ant(ant));
+        rules.add("include ant " + ant);
         return this;
     }
 
@@ -114,6 +123,7 @@ public class XEncryption {
      */
     public XEncryption include(Pattern regex) {
         includes.mix(regex(regex.pattern()));
+        rules.add("include regex " + regex.pattern());
         return this;
     }
 
@@ -125,6 +135,7 @@ public class XEncryption {
      */
     public XEncryption exclude(String ant) {
         excludes.mix(not(ant(ant)));
+        rules.add("exclude ant " + ant);
         return this;
     }
 
@@ -136,9 +147,105 @@ public class XEncryption {
      */
     public XEncryption exclude(Pattern regex) {
         excludes.mix(not(regex(regex.pattern())));
+        rules.add("exclude regex " + regex.pattern());
         return this;
     }
 
+    /**
+     * 指定并行加密的线程数, 各个记录的加密与压缩会分发到多个线程执行, 输出的记录顺序与原文包一致.
+     *
+     * @param threads 线程数, 小于等于 1 时按顺序加密
+     * @return {@code this}
+     */
+    public XEncryption parallel(int threads) {
+        options.threads(threads);
+        return this;
+    }
+
+    /**
+     * 指定是否先压缩后加密, 开启后加密记录以 STORED 方式写入密文包, 运行时解密后再解压, 省去对密文的无效压缩.
+     *
+     * @param compress 是否先压缩后加密
+     * @return {@code this}
+     */
+    public XEncryption compress(boolean compress) {
+        options.compress(compress);
+        return this;
+    }
+
+    /**
+     * 指定是否以可跳转的格式加密类文件以外的资源, 开启后运行时读取这些资源时跳过和部分读取 (如 HTTP Range 请求) 都不需要解密前面的内容.
+     * 可跳转的格式没有完整性校验, 不能与 AES/GCM、ChaCha20-Poly1305 等认证加密算法同时使用, 需要时改用 {@link #chunked(long)}.
+     *
+     * @param seekable 是否以可跳转的格式加密
+     * @return {@code this}
+     */
+    public XEncryption seekable(boolean seekable) {
+        options.seekable(seekable);
+        return this;
+    }
+
+    /**
+     * 指定分块加密的大小阈值, 不小于该大小的资源 (如模型文件、较大的 JSON 字典) 切分成固定大小的分块独立加密, 构建和运行时都并行加/解密.
+     *
+     * @param threshold 大小阈值, 字节数, 小于等于 0 时不分块
+     * @return {@code this}
+     */
+    public XEncryption chunked(long threshold) {
+        options.chunked(threshold);
+        return this;
+    }
+
+    /**
+     * 指定加密过程中缓冲在内存中的字节数上限, 超出部分 (如较大的内嵌JAR包) 溢写到临时文件, 默认 64MB.
+     *
+     * @param memory 字节数
+     * @return {@code this}
+     */
+    public XEncryption memory(long memory) {
+        options.memory(memory);
+        return this;
+    }
+
+    /**
+     * 指定并发加密内嵌JAR包 (BOOT-INF/lib/*.jar) 的执行器, 加密结果仍按原顺序写入密文包, 执行器由调用方负责关闭.
+     *
+     * @param executor 执行器
+     * @return {@code this}
+     */
+    public XEncryption executor(Executor executor) {
+        options.executor(executor);
+        return this;
+    }
+
+    /**
+     * 指定增量加密缓存目录, 原文没有变化的内嵌JAR包和记录直接拷贝上一次的加密结果, 加密结束后按最近使用时间淘汰超出容量的缓存.
+     *
+     * @param dir      缓存目录
+     * @param capacity 缓存容量, 字节数
+     * @return {@code this}
+     */
+    public XEncryption cache(String dir, long capacity) {
+        this.cacheDir = new File(dir);
+        this.cacheCapacity = capacity;
+        return this;
+    }
+
+    /**
+     * 指定启动顺序记录文件, 即以 -Dxjar.profile=文件路径 启动加密包训练运行后生成的文件,
+     * BOOT-INF/classes 下的记录按其中的顺序写入密文包, 冷启动时对密文包的读取接近顺序读取.
+     *
+     * @param profile 启动顺序记录文件路径
+     * @return {@code this}
+     */
+    public XEncryption profile(String profile) {
+        try {
+            options.profile(XBootProfile.read(new File(profile)));
+            return this;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("could not read profile: " + profile, e);
+        }
+    }
 
     /**
      * 指定密文包文件路径, 并执行加密.
@@ -155,18 +262,20 @@ public class XEncryption {
         if (key == null) {
             throw new IllegalArgumentException("key to encrypt is null. [please call use(String password) or use(String algorithm, int keysize, int ivsize, String password) before]");
         }
+        options.check(key);
 
-        XMixEntryFilter<JarArchiveEntry> filter;
+        XEntryFilter<JarArchiveEntry> filter;
         if (includes.size() == 0 && excludes.size() == 0) {
             filter = null;
         } else {
-            filter = XKit.all();
+            XMixEntryFilter<JarArchiveEntry> mixed = XKit.all();
             if (includes.size() > 0) {
-                filter.mix(includes);
+                mixed.mix(includes);
             }
             if (excludes.size() > 0) {
-                filter.mix(excludes);
+                mixed.mix(excludes);
             }
+            filter = compile(mixed);
         }
 
         if (null == appName) {
@@ -175,9 +284,21 @@ public class XEncryption {
 
         System.out.println("开始加密。。。");
 
+        XEncryptCache cache = null;
+        if (cacheDir != null) {
+            cache = new XEncryptCache(cacheDir, cacheCapacity, key, String.join("\n", rules), options);
+        }
+        options.cache(cache);
+
         //加密jar包
         Files.createDirectories(Paths.get(to, "resource"));
-        XCryptos.encrypt(jar, Paths.get(to, "resource", appName).toFile(), key, filter);
+        XSmartEncryptor xSmartEncryptor = new XSmartEncryptor(new XJdkEncryptor(), filter, options);
+        xSmartEncryptor.encrypt(key, jar, Paths.get(to, "resource", appName).toFile());
+
+        if (cache != null) {
+            int evicted = cache.evict();
+            System.out.println("加密缓存命中 " + cache.hits() + " 次，未命中 " + cache.misses() + " 次，淘汰 " + evicted + " 个。。。");
+        }
 
         if (Objects.equals("", validStartDate)) {
             this.validStartDate = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
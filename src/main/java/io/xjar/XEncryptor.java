@@ -2,10 +2,13 @@ package io.xjar;
 
 import io.xjar.key.XKey;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * 加密器
@@ -55,4 +58,51 @@ public interface XEncryptor {
      */
     OutputStream encrypt(XKey key, OutputStream out) throws IOException;
 
+    /**
+     * 加密，一次性加密字节数组，默认实现经过流加密，实现类可以直接调用 {@link javax.crypto.Cipher#doFinal(byte[])} 避免流的开销。
+     *
+     * @param key 密钥
+     * @param src 源数据
+     * @return 加密后的数据
+     * @throws IOException I/O 异常
+     */
+    default byte[] encrypt(XKey key, byte[] src) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(src.length + 64);
+        encrypt(key, new ByteArrayInputStream(src), out);
+        return out.toByteArray();
+    }
+
+    /**
+     * 加密，一次性加密源缓冲区中剩余的数据，返回按预估长度分配的缓冲区，其中的数据从 0 到 limit。
+     *
+     * @param key 密钥
+     * @param src 源缓冲区，可以是直接缓冲区，加密后 position 移动到 limit
+     * @return 加密后的缓冲区
+     * @throws IOException I/O 异常
+     */
+    default ByteBuffer encrypt(XKey key, ByteBuffer src) throws IOException {
+        byte[] bytes = new byte[src.remaining()];
+        src.get(bytes);
+        return ByteBuffer.wrap(encrypt(key, bytes));
+    }
+
+    /**
+     * 加密，一次性把源缓冲区中剩余的数据加密到目标缓冲区，两者都可以是直接缓冲区。
+     *
+     * @param key 密钥
+     * @param src 源缓冲区，加密后 position 移动到 limit
+     * @param dst 目标缓冲区，剩余空间需要足够容纳加密后的数据
+     * @return 写入目标缓冲区的字节数
+     * @throws IOException I/O 异常或目标缓冲区剩余空间不足
+     */
+    default int encrypt(XKey key, ByteBuffer src, ByteBuffer dst) throws IOException {
+        ByteBuffer result = encrypt(key, src);
+        int length = result.remaining();
+        if (length > dst.remaining()) {
+            throw new IOException("destination buffer too small: " + dst.remaining() + " < " + length);
+        }
+        dst.put(result);
+        return length;
+    }
+
 }
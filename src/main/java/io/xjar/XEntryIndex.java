@@ -0,0 +1,244 @@
+package io.xjar;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 加密资源索引，启动时把类路径下所有的 XJAR-INF/INDEXES.IDX 各自一次性读入内存，每个类路径对应一张 {@link XIndexTable}。
+ * 以资源URL的文件部分（即去掉 jar: 协议头的部分）查询：最后一个 "!/" 之前是类路径，之后是记录名称，
+ * 先按类路径在哈希表中找到对应的表，再在表中按哈希值查找记录名称，查询过程不需要拼接记录名称，启动时也不会为每个记录创建字符串。
+ * 只有资源名称的查询先在所有表的名称哈希值合集中排除，命中时从第一个含有该哈希值的表开始比较名称。
+ * 没有 XJAR-INF/INDEXES.IDX 的类路径视为明文类路径，{@link #isPlain(URL)} 只比较类路径就能排除其中的所有资源。
+ * 索引同时记录了每个资源的加密模式、明文和密文的长度及明文的CRC。旧版本生成的文本格式的索引在读入时转换成同样的表。
+ *
+ * @author kongweiguang
+ */
+public class XEntryIndex implements XConstants {
+    private static final String JAR_PROTOCOL = "jar";
+    private static final String SEPARATOR = "!/";
+
+    private final Map<String, Integer> classpaths;
+    private final List<XIndexTable> tables;
+    private final long[] hashes;
+    private final int size;
+    private volatile Set<String> names;
+
+    public XEntryIndex(ClassLoader classLoader) throws IOException {
+        this.classpaths = new HashMap<>();
+        this.tables = new ArrayList<>();
+        int size = 0;
+        Enumeration<URL> resources = classLoader.getResources(XJAR_INF_DIR + XJAR_INF_IDX);
+        while (resources.hasMoreElements()) {
+            URL resource = resources.nextElement();
+            String file = resource.getFile();
+            URLConnection connection = resource.openConnection();
+            byte[] bytes;
+            try (InputStream in = connection.getInputStream()) {
+                bytes = XKit.read(in, connection.getContentLengthLong());
+            }
+            XIndexTable table = table(bytes);
+            classpaths.putIfAbsent(file.substring(0, file.lastIndexOf(SEPARATOR) + SEPARATOR.length()), tables.size());
+            tables.add(table);
+            size += table.size();
+        }
+        this.size = size;
+        this.hashes = tables.size() > 1 ? hashes(tables, size) : null;
+    }
+
+    /**
+     * 所有表中记录名称的哈希值合集，开放寻址，每个槽的低 32 位是哈希值，高 32 位是第一个含有该哈希值的表的序号加一，为 0 表示空槽
+     */
+    private static long[] hashes(List<XIndexTable> tables, int size) {
+        long[] hashes = new long[Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1];
+        int mask = hashes.length - 1;
+        for (int t = 0; t < tables.size(); t++) {
+            XIndexTable table = tables.get(t);
+            for (int i = 0; i < table.size(); i++) {
+                int hash = table.hashAt(i);
+                for (int slot = (hash ^ (hash >>> 16)) & mask; ; slot = (slot + 1) & mask) {
+                    if (hashes[slot] == 0) {
+                        hashes[slot] = ((long) (t + 1) << 32) | (hash & 0xFFFFFFFFL);
+                        break;
+                    }
+                    if ((int) hashes[slot] == hash) {
+                        break;
+                    }
+                }
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * @return 第一个含有该哈希值的表的序号，没有任何表含有时返回 -1
+     */
+    private int first(int hash) {
+        int mask = hashes.length - 1;
+        for (int slot = (hash ^ (hash >>> 16)) & mask; ; slot = (slot + 1) & mask) {
+            long value = hashes[slot];
+            if (value == 0) {
+                return -1;
+            }
+            if ((int) value == hash) {
+                return (int) (value >>> 32) - 1;
+            }
+        }
+    }
+
+    /**
+     * 读取二进制索引，文本格式的旧索引逐行解析后转换成二进制索引
+     */
+    private static XIndexTable table(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (XIndexTable.isTable(buffer)) {
+            return new XIndexTable(buffer);
+        }
+        List<XIndexEntry> entries = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(new String(bytes)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    entries.add(XIndexEntry.parse(line));
+                }
+            }
+        }
+        return new XIndexTable(ByteBuffer.wrap(XIndexTable.write(entries)));
+    }
+
+    /**
+     * 在类路径对应的表中查找资源
+     *
+     * @return 表的序号和记录序号，高 32 位为表的序号，没有找到时返回 -1
+     */
+    private long find(URL url) {
+        if (url == null || tables.isEmpty() || !JAR_PROTOCOL.equals(url.getProtocol())) {
+            return -1;
+        }
+        String file = url.getFile();
+        int from = file.lastIndexOf(SEPARATOR) + SEPARATOR.length();
+        int t = table(file, from);
+        if (t < 0) {
+            return -1;
+        }
+        int index = tables.get(t).find(file, from);
+        return index < 0 ? -1 : ((long) t << 32) | index;
+    }
+
+    /**
+     * 找出资源所在类路径对应的表
+     *
+     * @param file 资源URL的文件部分
+     * @param from 记录名称在文件部分中的起始位置，即最后一个 "!/" 之后的位置
+     * @return 表的序号，资源所在的类路径中没有加密资源时返回 -1
+     */
+    private int table(String file, int from) {
+        if (from < SEPARATOR.length()) {
+            return -1;
+        }
+        Integer t = classpaths.get(file.substring(0, from));
+        return t != null ? t : -1;
+    }
+
+    /**
+     * 判断资源所在的类路径是否没有任何加密资源，如没有 XJAR-INF 的第三方内嵌JAR包，这些类路径下的资源都不需要经过 XJar 的协议处理器。
+     *
+     * @param url 资源URL
+     * @return 所在类路径没有加密资源: {@code true} 否则: {@code false}
+     */
+    public boolean isPlain(URL url) {
+        if (url == null || tables.isEmpty() || !JAR_PROTOCOL.equals(url.getProtocol())) {
+            return true;
+        }
+        String file = url.getFile();
+        return table(file, file.lastIndexOf(SEPARATOR) + SEPARATOR.length()) < 0;
+    }
+
+    /**
+     * 判断资源是否被加密
+     *
+     * @param url 资源URL
+     * @return 被加密: {@code true} 否则: {@code false}
+     */
+    public boolean contains(URL url) {
+        return find(url) >= 0;
+    }
+
+    /**
+     * 取得加密资源的索引记录
+     *
+     * @param url 资源URL
+     * @return 索引记录，资源没有被加密时返回 {@code null}
+     */
+    public XIndexEntry get(URL url) {
+        long found = find(url);
+        return found < 0 ? null : tables.get((int) (found >>> 32)).entry((int) found);
+    }
+
+    /**
+     * 判断是否有任意一个类路径下的同名资源被加密，用于在定位资源之前快速排除绝大多数未加密的资源。
+     *
+     * @param name 资源名称，如 io/xjar/XKit.class
+     * @return 任意类路径下的同名资源被加密: {@code true} 否则: {@code false}
+     */
+    public boolean maybeContains(String name) {
+        if (hashes == null) {
+            return !tables.isEmpty() && tables.get(0).find(name, 0) >= 0;
+        }
+        int first = first(name.hashCode());
+        if (first < 0) {
+            return false;
+        }
+        for (int t = first; t < tables.size(); t++) {
+            if (tables.get(t).find(name, 0) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 所有类路径下加密资源的名称，第一次调用时才从各个表中取出
+     *
+     * @return 所有类路径下加密资源的名称，只读
+     */
+    public Set<String> names() {
+        Set<String> names = this.names;
+        if (names == null) {
+            names = new HashSet<>();
+            for (XIndexTable table : tables) {
+                names.addAll(table.names());
+            }
+            names = Collections.unmodifiableSet(names);
+            this.names = names;
+        }
+        return names;
+    }
+
+    /**
+     * @return 加密资源数量
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return 是否没有任何加密资源
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -5,6 +5,7 @@ import io.xjar.filter.XAnyEntryFilter;
 import io.xjar.filter.XMixEntryFilter;
 import io.xjar.filter.XNotEntryFilter;
 import io.xjar.jar.XJarAntEntryFilter;
+import io.xjar.jar.XJarCompiledEntryFilter;
 import io.xjar.jar.XJarRegexEntryFilter;
 import org.apache.commons.compress.archivers.jar.JarArchiveEntry;
 
@@ -123,4 +124,15 @@ public abstract class XFilters {
     public static XJarRegexEntryFilter regex(String regex) {
         return new XJarRegexEntryFilter(regex);
     }
+
+    /**
+     * 把由 ALL/ANY/NOT 混合过滤器和ANT表达式过滤器组成的过滤器树编译成单个自动机，所有ANT表达式在一次扫描中完成匹配。
+     * 过滤器树中含有其他类型的过滤器（如正则表达式过滤器）时原样返回。
+     *
+     * @param filter 过滤器树
+     * @return 编译后的过滤器，无法编译时返回原过滤器
+     */
+    public static XEntryFilter<JarArchiveEntry> compile(XEntryFilter<JarArchiveEntry> filter) {
+        return filter != null && XJarCompiledEntryFilter.isCompilable(filter) ? new XJarCompiledEntryFilter(filter) : filter;
+    }
 }
@@ -5,12 +5,14 @@ import org.apache.commons.codec.binary.Hex;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherOutputStream;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.*;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.security.SecureRandom;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -28,6 +30,8 @@ public class XGo {
     private static final String MAIN_GO_FILE = "main.go";
     private static final String LICENSE_FILE = "key.x";
     private static final String TEMPLATE_PATH = "xjar/" + MAIN_GO_FILE;
+    private static final String LICENSE_CBC = "CBC";
+    private static final String LICENSE_GCM = "GCM";
 
     public static void make(String to, XKey xKey, String appName, String jarArgs,
                             String validStartDate, String validEndDate, String code) throws IOException {
@@ -44,6 +48,7 @@ public class XGo {
         variables.put("code", code);
         variables.put("hexKey", Hex.encodeHexString(xKey.getEncryptKey()));
         variables.put("hexIV", Hex.encodeHexString(xKey.getIvParameter()));
+        variables.put("licenseMode", XCipherEngine.isAead(xKey.getAlgorithm()) ? LICENSE_GCM : LICENSE_CBC);
         variables.put("xKey.algorithm", convertBytes(xKey.getAlgorithm().getBytes(StandardCharsets.UTF_8)));
         variables.put("xKey.keysize", convertBytes(String.valueOf(xKey.getKeysize()).getBytes(StandardCharsets.UTF_8)));
         variables.put("xKey.ivsize", convertBytes(String.valueOf(xKey.getIvsize()).getBytes(StandardCharsets.UTF_8)));
@@ -76,7 +81,8 @@ public class XGo {
     }
 
     /**
-     * 生成加密 license 文件
+     * 生成加密 license 文件，认证加密的密钥用 AES/GCM 加密 license（ChaCha20-Poly1305 的 256 位密钥即 AES-256 密钥），
+     * 文件内容为随机数加密文和认证标签，启动器只依赖 Go 标准库即可解密。
      *
      * @param to             目标路径
      * @param xKey           加密密钥
@@ -101,6 +107,15 @@ public class XGo {
         try (
                 OutputStream fileOut = new FileOutputStream(outputFile)
         ) {
+            if (XCipherEngine.isAead(xKey.getAlgorithm())) {
+                byte[] nonce = new byte[12];
+                new SecureRandom().nextBytes(nonce);
+                Cipher cipher = Cipher.getInstance(XConstants.ALGORITHM_AES_GCM);
+                cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(xKey.getEncryptKey(), "AES"), new GCMParameterSpec(128, nonce));
+                fileOut.write(nonce);
+                fileOut.write(cipher.doFinal(json.getBytes(StandardCharsets.UTF_8)));
+                return;
+            }
             Cipher cipher = Cipher.getInstance(xKey.getAlgorithm());
             SecretKeySpec keySpec = new SecretKeySpec(xKey.getEncryptKey(), xKey.getAlgorithm().split("/")[0]);
             IvParameterSpec ivSpec = new IvParameterSpec(xKey.getIvParameter());
@@ -0,0 +1,209 @@
+package io.xjar;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * 加密索引中的一条记录，记录加密资源的名称、加密模式、明文长度、密文长度和明文的 CRC32，未知的长度和CRC记为 -1。
+ * 运行时据此返回正确的 Content-Length、按明文长度一次性分配缓冲区，并在定义类之前校验明文。
+ * 索引以 {@link XIndexTable} 的二进制格式写入；{@link #parse(String)} 和 {@link #toString()} 对应旧版本的文本格式，
+ * 各字段以 {@link XConstants#XJAR_INF_IDX_SEPARATOR} 分隔：
+ * <pre>
+ * name [\t MODE [\t size \t length \t crc]]
+ * </pre>
+ * 默认模式的 MODE 为空，只有名称或只有名称和模式的更早的格式同样可以解析。
+ *
+ * @author kongweiguang
+ */
+public class XIndexEntry implements XConstants {
+    private final String name;
+    private final String mode;
+    private long size = -1;
+    private long length = -1;
+    private long crc = -1;
+
+    /**
+     * @param name 记录名称
+     * @param mode 加密模式，默认模式为 {@code null}
+     */
+    public XIndexEntry(String name, String mode) {
+        this.name = name;
+        this.mode = mode;
+    }
+
+    /**
+     * 解析文本格式的索引行
+     *
+     * @param line 索引行
+     * @return 索引行记录的加密资源
+     */
+    public static XIndexEntry parse(String line) {
+        String[] fields = line.split(XJAR_INF_IDX_SEPARATOR, -1);
+        String mode = fields.length > 1 && !fields[1].isEmpty() ? fields[1] : null;
+        XIndexEntry entry = new XIndexEntry(fields[0], mode);
+        if (fields.length > 4) {
+            try {
+                entry.size = Long.parseLong(fields[2]);
+                entry.length = Long.parseLong(fields[3]);
+                entry.crc = Long.parseLong(fields[4]);
+            } catch (NumberFormatException e) {
+                entry.size = entry.length = entry.crc = -1;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * 记录明文的长度和CRC
+     *
+     * @param size 明文长度
+     * @param crc  明文的 CRC32
+     * @return {@code this}
+     */
+    public XIndexEntry plain(long size, long crc) {
+        this.size = size;
+        this.crc = crc;
+        return this;
+    }
+
+    /**
+     * 记录密文的长度
+     *
+     * @param length 密文长度
+     * @return {@code this}
+     */
+    public XIndexEntry cipher(long length) {
+        this.length = length;
+        return this;
+    }
+
+    /**
+     * 包装原文输入流，读取的同时记录明文的长度和CRC
+     *
+     * @param in 原文输入流
+     * @return 包装后的输入流，关闭时关闭原文输入流
+     */
+    public InputStream measure(InputStream in) {
+        size = 0;
+        return new CheckedInputStream(in, new CRC32()) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    size++;
+                    crc = getChecksum().getValue();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) throws IOException {
+                int n = super.read(buf, off, len);
+                if (n > 0) {
+                    size += n;
+                    crc = getChecksum().getValue();
+                }
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                throw new IOException("skip not supported while measuring");
+            }
+        };
+    }
+
+    /**
+     * 包装密文输出流，写入的同时记录密文的长度
+     *
+     * @param out 密文输出流
+     * @return 包装后的输出流，关闭时关闭密文输出流
+     */
+    public OutputStream count(OutputStream out) {
+        length = 0;
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                length++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                length += len;
+            }
+        };
+    }
+
+    /**
+     * 校验解密后的明文，索引中没有记录长度或CRC时不校验
+     *
+     * @param bytes 明文，从 position 到 limit，校验不改变其 position
+     * @throws IOException 明文的长度或CRC与索引不符
+     */
+    public void verify(ByteBuffer bytes) throws IOException {
+        if (size >= 0 && bytes.remaining() != size) {
+            throw new IOException("corrupted entry " + name + ": expected " + size + " bytes but was " + bytes.remaining());
+        }
+        if (crc >= 0) {
+            CRC32 checksum = new CRC32();
+            checksum.update(bytes.duplicate());
+            if (checksum.getValue() != crc) {
+                throw new IOException("corrupted entry " + name + ": CRC mismatch");
+            }
+        }
+    }
+
+    /**
+     * @return 记录名称
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return 加密模式，默认模式为 {@code null}
+     */
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * @return 明文长度，未知时为 -1
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return 密文长度，未知时为 -1
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return 明文的 CRC32，未知时为 -1
+     */
+    public long getCrc() {
+        return crc;
+    }
+
+    /**
+     * @return 文本格式的索引行
+     */
+    @Override
+    public String toString() {
+        return name
+                + XJAR_INF_IDX_SEPARATOR + (mode != null ? mode : "")
+                + XJAR_INF_IDX_SEPARATOR + size
+                + XJAR_INF_IDX_SEPARATOR + length
+                + XJAR_INF_IDX_SEPARATOR + crc;
+    }
+}
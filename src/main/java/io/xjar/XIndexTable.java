@@ -0,0 +1,263 @@
+package io.xjar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 加密索引的二进制格式：开放寻址的哈希槽、按名称哈希值排序的定长记录表和 UTF-8 编码的名称池，所有整数都是大端序。
+ * <pre>
+ * int  magic     "XIDX"
+ * int  version   1
+ * int  count     记录数
+ * int  slots     哈希槽数，不小于记录数两倍的 2 的幂
+ * int  pool      名称池的偏移
+ * int  × slots   记录序号 + 1，0 表示空槽
+ * 记录 × count    int hash, int name offset, int name length, int mode, long size, long length, long crc
+ * 名称池
+ * </pre>
+ * 查询时按哈希值定位到槽后线性探测，再逐字节比较名称池中的名称和查询的字符串，整个过程直接在读入的缓冲区上进行，
+ * 不会为每个记录创建字符串或对象，所以启动时的加载开销与记录数无关。
+ * 哈希值与 {@link String#hashCode()} 的算法相同，查询类名时可以直接使用字符串缓存的哈希值。
+ *
+ * @author kongweiguang
+ */
+public class XIndexTable implements XConstants {
+    private static final int MAGIC = 0x58494458;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+    private static final int RECORD_SIZE = 40;
+    private static final String[] MODES = {null, XJAR_MODE_COMPRESSED, XJAR_MODE_SEEKABLE, XJAR_MODE_CHUNKED};
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int slots;
+    private final int records;
+    private final int pool;
+
+    /**
+     * @param buffer 二进制索引，可以是映射的缓冲区，按绝对位置读取，不会改变其 position
+     * @throws IOException 不是二进制索引或版本不支持
+     */
+    public XIndexTable(ByteBuffer buffer) throws IOException {
+        if (!isTable(buffer)) {
+            throw new IOException("not a binary entry index");
+        }
+        int start = buffer.position();
+        if (buffer.getInt(start + 4) != VERSION) {
+            throw new IOException("unsupported entry index version: " + buffer.getInt(start + 4));
+        }
+        this.buffer = buffer.slice();
+        this.count = this.buffer.getInt(8);
+        this.slots = this.buffer.getInt(12);
+        this.pool = this.buffer.getInt(16);
+        this.records = HEADER_SIZE + slots * 4;
+        if (count < 0 || slots <= count || Integer.bitCount(slots) != 1
+                || pool != HEADER_SIZE + (long) slots * 4 + (long) count * RECORD_SIZE || pool > this.buffer.limit()) {
+            throw new IOException("corrupted entry index");
+        }
+    }
+
+    /**
+     * 判断缓冲区的内容是否是二进制索引
+     *
+     * @param buffer 缓冲区
+     * @return 是: {@code true} 否则: {@code false}
+     */
+    public static boolean isTable(ByteBuffer buffer) {
+        return buffer.remaining() >= HEADER_SIZE && buffer.getInt(buffer.position()) == MAGIC;
+    }
+
+    /**
+     * 生成二进制索引
+     *
+     * @param entries 索引记录
+     * @return 二进制索引
+     */
+    public static byte[] write(Collection<XIndexEntry> entries) {
+        List<XIndexEntry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparingInt(entry -> entry.getName().hashCode()));
+        int slots = Integer.highestOneBit(Math.max(sorted.size(), 1) * 2) << 1;
+        ByteArrayOutputStream names = new ByteArrayOutputStream();
+        ByteBuffer records = ByteBuffer.allocate(HEADER_SIZE + slots * 4 + sorted.size() * RECORD_SIZE);
+        records.putInt(MAGIC).putInt(VERSION).putInt(sorted.size()).putInt(slots).putInt(records.capacity());
+        for (int i = 0; i < sorted.size(); i++) {
+            int slot = spread(sorted.get(i).getName().hashCode()) & (slots - 1);
+            while (records.getInt(HEADER_SIZE + slot * 4) != 0) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            records.putInt(HEADER_SIZE + slot * 4, i + 1);
+        }
+        records.position(HEADER_SIZE + slots * 4);
+        for (XIndexEntry entry : sorted) {
+            byte[] name = entry.getName().getBytes(StandardCharsets.UTF_8);
+            records.putInt(entry.getName().hashCode())
+                    .putInt(names.size())
+                    .putInt(name.length)
+                    .putInt(mode(entry.getMode()))
+                    .putLong(entry.getSize())
+                    .putLong(entry.getLength())
+                    .putLong(entry.getCrc());
+            names.write(name, 0, name.length);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(records.capacity() + names.size());
+        out.write(records.array(), 0, records.capacity());
+        out.write(names.toByteArray(), 0, names.size());
+        return out.toByteArray();
+    }
+
+    /**
+     * 查找记录
+     *
+     * @param name 字符串，从 {@code from} 开始的部分为记录名称
+     * @param from 记录名称在字符串中的起始位置
+     * @return 记录序号，没有找到时返回 -1
+     */
+    public int find(String name, int from) {
+        int hash = from == 0 ? name.hashCode() : hash(name, from);
+        int mask = slots - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int index = buffer.getInt(HEADER_SIZE + slot * 4) - 1;
+            if (index < 0) {
+                return -1;
+            }
+            if (hashAt(index) == hash && matches(index, name, from)) {
+                return index;
+            }
+        }
+    }
+
+    /**
+     * @param index 记录序号
+     * @return 加密模式，默认模式为 {@code null}
+     */
+    public String mode(int index) {
+        int mode = buffer.getInt(record(index) + 12);
+        return mode > 0 && mode < MODES.length ? MODES[mode] : null;
+    }
+
+    /**
+     * 取出记录，只在需要完整记录时调用
+     *
+     * @param index 记录序号
+     * @return 索引记录
+     */
+    public XIndexEntry entry(int index) {
+        int record = record(index);
+        return new XIndexEntry(name(index), mode(index)).plain(buffer.getLong(record + 16), buffer.getLong(record + 32)).cipher(buffer.getLong(record + 24));
+    }
+
+    /**
+     * @param index 记录序号
+     * @return 记录名称
+     */
+    public String name(int index) {
+        int record = record(index);
+        byte[] bytes = new byte[buffer.getInt(record + 8)];
+        buffer.get(pool + buffer.getInt(record + 4), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return 所有记录的名称
+     */
+    public Set<String> names() {
+        Set<String> names = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++) {
+            names.add(name(i));
+        }
+        return names;
+    }
+
+    /**
+     * @return 记录数
+     */
+    public int size() {
+        return count;
+    }
+
+    private int record(int index) {
+        return records + index * RECORD_SIZE;
+    }
+
+    /**
+     * 把哈希值的高位混入低位，避免只取低位定位槽时冲突过多
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @param index 记录序号
+     * @return 记录名称的哈希值，与 {@link String#hashCode()} 相同
+     */
+    public int hashAt(int index) {
+        return buffer.getInt(record(index));
+    }
+
+    /**
+     * 与 {@link String#hashCode()} 相同的算法计算字符串从 {@code from} 开始的部分的哈希值
+     */
+    private static int hash(String s, int from) {
+        int h = 0;
+        for (int i = from, n = s.length(); i < n; i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        return h;
+    }
+
+    /**
+     * 逐个码点比较名称池中 UTF-8 编码的名称与字符串从 {@code from} 开始的部分
+     */
+    private boolean matches(int index, String s, int from) {
+        int record = record(index);
+        int p = pool + buffer.getInt(record + 4);
+        int end = p + buffer.getInt(record + 8);
+        int i = from;
+        int n = s.length();
+        while (p < end) {
+            if (i >= n) {
+                return false;
+            }
+            int b = buffer.get(p);
+            if (b >= 0) {
+                if (s.charAt(i) != b) {
+                    return false;
+                }
+                p++;
+                i++;
+                continue;
+            }
+            int length = (b & 0xE0) == 0xC0 ? 2 : (b & 0xF0) == 0xE0 ? 3 : 4;
+            if (p + length > end) {
+                return false;
+            }
+            int cp = b & (0xFF >>> (length + 1));
+            for (int k = 1; k < length; k++) {
+                cp = (cp << 6) | (buffer.get(p + k) & 0x3F);
+            }
+            if (s.codePointAt(i) != cp) {
+                return false;
+            }
+            p += length;
+            i += Character.charCount(cp);
+        }
+        return i == n;
+    }
+
+    private static int mode(String mode) {
+        for (int i = 1; i < MODES.length; i++) {
+            if (MODES[i].equals(mode)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+}
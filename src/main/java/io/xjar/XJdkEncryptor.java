@@ -3,11 +3,8 @@ package io.xjar;
 import io.xjar.key.XKey;
 
 import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
-import javax.crypto.CipherOutputStream;
-import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * JDK内置加密算法的加密器
@@ -16,6 +13,7 @@ import java.io.*;
  * 2018/11/22 14:01
  */
 public class XJdkEncryptor implements XEncryptor {
+    private final XCipherEngine xCipherEngine = new XCipherEngine(Cipher.ENCRYPT_MODE);
 
     @Override
     public void encrypt(XKey key, File src, File dest) throws IOException {
@@ -32,15 +30,10 @@ public class XJdkEncryptor implements XEncryptor {
 
     @Override
     public void encrypt(XKey key, InputStream in, OutputStream out) throws IOException {
-        CipherInputStream cis = null;
+        InputStream cis = null;
         try {
-            String algorithm = key.getAlgorithm();
-            Cipher cipher = Cipher.getInstance(algorithm);
-            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key.getEncryptKey(), algorithm.split("[/]")[0]), new IvParameterSpec(key.getIvParameter()));
-            cis = new CipherInputStream(in, cipher);
+            cis = xCipherEngine.wrap(key, in);
             XKit.transfer(cis, out);
-        } catch (Exception e) {
-            throw new IOException(e);
         } finally {
             XKit.close(cis);
         }
@@ -48,25 +41,26 @@ public class XJdkEncryptor implements XEncryptor {
 
     @Override
     public InputStream encrypt(XKey key, InputStream in) throws IOException {
-        try {
-            String algorithm = key.getAlgorithm();
-            Cipher cipher = Cipher.getInstance(algorithm);
-            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key.getEncryptKey(), algorithm.split("[/]")[0]), new IvParameterSpec(key.getIvParameter()));
-            return new CipherInputStream(in, cipher);
-        } catch (Exception e) {
-            throw new IOException(e);
-        }
+        return xCipherEngine.wrap(key, in);
     }
 
     @Override
     public OutputStream encrypt(XKey key, OutputStream out) throws IOException {
-        try {
-            String algorithm = key.getAlgorithm();
-            Cipher cipher = Cipher.getInstance(algorithm);
-            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key.getEncryptKey(), algorithm.split("[/]")[0]), new IvParameterSpec(key.getIvParameter()));
-            return new CipherOutputStream(out, cipher);
-        } catch (Exception e) {
-            throw new IOException(e);
-        }
+        return xCipherEngine.wrap(key, out);
+    }
+
+    @Override
+    public byte[] encrypt(XKey key, byte[] src) throws IOException {
+        return xCipherEngine.doFinal(key, src);
+    }
+
+    @Override
+    public ByteBuffer encrypt(XKey key, ByteBuffer src) throws IOException {
+        return xCipherEngine.doFinal(key, src);
+    }
+
+    @Override
+    public int encrypt(XKey key, ByteBuffer src, ByteBuffer dst) throws IOException {
+        return xCipherEngine.doFinal(key, src, dst);
     }
 }
@@ -13,6 +13,7 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -73,6 +74,34 @@ public abstract class XKit implements XConstants {
         return bos.toByteArray();
     }
 
+    /**
+     * 按已知的长度一次性分配缓冲区读取输入流的全部内容，长度未知或与实际不符时退回按需扩容
+     *
+     * @param in   输入流
+     * @param size 预计长度，未知时为 -1
+     * @return 全部内容
+     * @throws IOException I/O 异常
+     */
+    public static byte[] read(InputStream in, long size) throws IOException {
+        if (size < 0 || size > Integer.MAX_VALUE - 8) {
+            return read(in);
+        }
+        byte[] bytes = new byte[(int) size];
+        int n = in.readNBytes(bytes, 0, bytes.length);
+        if (n < bytes.length) {
+            return Arrays.copyOf(bytes, n);
+        }
+        int b = in.read();
+        if (b < 0) {
+            return bytes;
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(bytes.length * 2 + 1);
+        bos.write(bytes);
+        bos.write(b);
+        transfer(in, bos);
+        return bos.toByteArray();
+    }
+
     public static void write(OutputStream out, byte[] data) throws IOException {
         if (data == null) {
             return;
@@ -241,8 +270,17 @@ public abstract class XKit implements XConstants {
     public static XKey key(String algorithm, int keysize, int ivsize, String password) throws NoSuchAlgorithmException {
         MessageDigest sha512 = MessageDigest.getInstance("SHA-512");
         byte[] seed = sha512.digest(password.getBytes(StandardCharsets.UTF_8));
-        KeyGenerator generator = KeyGenerator.getInstance(algorithm.split("[/]")[0]);
         XSecureRandom random = new XSecureRandom(seed);
+        // 认证加密算法每个记录使用随机生成的随机数，向量只用于派生，不受密钥生成器支持的长度限制
+        if (XCipherEngine.isAead(algorithm)) {
+            KeyGenerator generator = KeyGenerator.getInstance(XCipherEngine.keyAlgorithm(algorithm));
+            generator.init(keysize, random);
+            SecretKey key = generator.generateKey();
+            byte[] iv = new byte[ivsize / 8];
+            random.nextBytes(iv);
+            return new XSymmetricSecureKey(algorithm, keysize, ivsize, password, key.getEncoded(), iv);
+        }
+        KeyGenerator generator = KeyGenerator.getInstance(algorithm.split("[/]")[0]);
         generator.init(keysize, random);
         SecretKey key = generator.generateKey();
         generator.init(ivsize, random);
@@ -15,6 +15,18 @@ public class XLauncher implements XConstants {
     public final XDecryptor xDecryptor;
     public final XEncryptor xEncryptor;
     public final XKey xKey;
+    public final boolean warmup;
+    public final int warmupThreads;
+    public final long warmupCapacity;
+    public final String profile;
+    public final boolean prefetch;
+    public final int prefetchWindow;
+    public final long prefetchCapacity;
+    public final long resourceCacheCapacity;
+    public final long resourceCacheTtl;
+    public final boolean resourceCacheClasses;
+    public final boolean mmap;
+    public final int decryptThreads;
 
     public XLauncher(String... args) throws Exception {
         this.args = args;
@@ -26,6 +38,27 @@ public class XLauncher implements XConstants {
         this.xDecryptor = new XJdkDecryptor();
         this.xEncryptor = new XJdkEncryptor();
         this.xKey = XKit.key(algorithm, keysize, ivsize, password);
+        this.warmup = Boolean.getBoolean(XJAR_WARMUP);
+        this.warmupThreads = Integer.getInteger(XJAR_WARMUP_THREADS, Runtime.getRuntime().availableProcessors());
+        this.warmupCapacity = Long.getLong(XJAR_WARMUP_CAPACITY, DEFAULT_WARMUP_CAPACITY);
+        this.profile = System.getProperty(XJAR_PROFILE);
+        this.prefetch = Boolean.getBoolean(XJAR_PREFETCH);
+        this.prefetchWindow = Integer.getInteger(XJAR_PREFETCH_WINDOW, DEFAULT_PREFETCH_WINDOW);
+        this.prefetchCapacity = Long.getLong(XJAR_PREFETCH_CAPACITY, DEFAULT_PREFETCH_CAPACITY);
+        this.resourceCacheCapacity = Long.getLong(XJAR_RESOURCE_CACHE_CAPACITY, 0);
+        this.resourceCacheTtl = Long.getLong(XJAR_RESOURCE_CACHE_TTL, DEFAULT_RESOURCE_CACHE_TTL);
+        this.resourceCacheClasses = Boolean.getBoolean(XJAR_RESOURCE_CACHE_CLASSES);
+        this.mmap = Boolean.getBoolean(XJAR_MMAP);
+        this.decryptThreads = Integer.getInteger(XJAR_DECRYPT_THREADS, 0);
+    }
+
+    /**
+     * 按 xjar.resource.cache.* 系统属性创建解密后的资源内容缓存
+     *
+     * @return 解密后的资源内容缓存，没有指定容量时返回 {@code null}
+     */
+    public XResourceCache resourceCache() {
+        return resourceCacheCapacity > 0 ? new XResourceCache(resourceCacheCapacity, resourceCacheTtl, resourceCacheClasses) : null;
     }
 
 }
@@ -0,0 +1,111 @@
+package io.xjar;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按资源URL定位内存映射的 STORED 记录，每个类路径只解析一次。支持以下两种类路径：
+ * <pre>
+ * jar:file:/path/app.jar!/name                               普通JAR包
+ * jar:nested:/path/app.jar/!BOOT-INF/classes/!/name          Spring-Boot JAR包中的目录
+ * jar:nested:/path/app.jar/!BOOT-INF/lib/lib.jar!/name       Spring-Boot JAR包中 STORED 的内嵌JAR包
+ * </pre>
+ * 其他类路径或解析失败的类路径记为不支持，调用方回退到输入流。
+ * 映射一直保留到本对象及其返回的切片都被回收为止，期间JAR包文件不能被截断或替换；
+ * 一旦发生，访问映射缓冲区会抛出 {@link InternalError} 而不是 {@link java.io.IOException}，调用方需要捕获并回退到输入流。
+ *
+ * @author kongweiguang
+ */
+public class XMappedClassPath {
+    private static final String JAR_PROTOCOL = "jar";
+    private static final String SEPARATOR = "!/";
+    private static final String FILE_PREFIX = "file:";
+    private static final String NESTED_PREFIX = "nested:";
+    private static final String NESTED_SEPARATOR = "/!";
+
+    private final ConcurrentMap<String, Optional<Root>> roots = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Optional<XMappedJar>> jars = new ConcurrentHashMap<>();
+
+    /**
+     * 定位资源对应的 STORED 记录
+     *
+     * @param url 资源URL
+     * @return 记录数据在映射缓冲区上的只读切片，不支持的类路径或不是 STORED 的记录返回 {@code null}
+     */
+    public ByteBuffer find(URL url) {
+        if (url == null || !JAR_PROTOCOL.equals(url.getProtocol())) {
+            return null;
+        }
+        String file = url.getFile();
+        int index = file.lastIndexOf(SEPARATOR);
+        if (index < 0) {
+            return null;
+        }
+        Root root = roots.computeIfAbsent(file.substring(0, index), path -> Optional.ofNullable(root(path))).orElse(null);
+        if (root == null) {
+            return null;
+        }
+        try {
+            return root.jar.entry(root.prefix.concat(file.substring(index + SEPARATOR.length())));
+        } catch (InternalError e) {
+            // 映射后文件被截断或替换，访问映射缓冲区时 JVM 抛出 InternalError，回退到输入流
+            return null;
+        }
+    }
+
+    private Root root(String path) {
+        try {
+            if (path.startsWith(FILE_PREFIX)) {
+                XMappedJar jar = jar(new File(new URI(path)));
+                return jar != null ? new Root(jar, "") : null;
+            }
+            if (path.startsWith(NESTED_PREFIX)) {
+                int index = path.indexOf(NESTED_SEPARATOR);
+                if (index < 0) {
+                    return null;
+                }
+                XMappedJar jar = jar(new File(new URI(FILE_PREFIX + path.substring(NESTED_PREFIX.length(), index))));
+                String nested = path.substring(index + NESTED_SEPARATOR.length());
+                if (jar == null || nested.isEmpty()) {
+                    return null;
+                }
+                if (nested.endsWith("/")) {
+                    return new Root(jar, nested);
+                }
+                XMappedJar lib = jar.nested(nested);
+                return lib != null ? new Root(lib, "") : null;
+            }
+        } catch (Exception | InternalError ignored) {
+            // 不支持的类路径回退到输入流
+        }
+        return null;
+    }
+
+    /**
+     * 同一个文件只映射一次，如 BOOT-INF/classes 和各个内嵌JAR包共用同一个外层JAR包的映射
+     */
+    private XMappedJar jar(File file) {
+        return jars.computeIfAbsent(file.getAbsolutePath(), path -> {
+            try {
+                return Optional.ofNullable(XMappedJar.map(file));
+            } catch (Exception | InternalError e) {
+                return Optional.empty();
+            }
+        }).orElse(null);
+    }
+
+    private static final class Root {
+        private final XMappedJar jar;
+        private final String prefix;
+
+        Root(XMappedJar jar, String prefix) {
+            this.jar = jar;
+            this.prefix = prefix;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package io.xjar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 内存映射的JAR包，只解析中央目录中以 STORED 方式存储的记录，按名称直接取出记录数据在映射缓冲区上的切片，
+ * 读取记录不需要经过 {@link java.util.jar.JarFile} 的输入流，也不会把数据拷贝到堆内存。
+ * 以 STORED 方式存储的内嵌JAR包本身也是映射缓冲区的一段，可以通过 {@link #nested(String)} 同样解析。
+ * 不支持 ZIP64 和签名的JAR包，遇到时不解析任何记录，由调用方回退到输入流。
+ * JDK 没有公开解除映射的方法，映射在缓冲区及其所有切片被回收时才释放；映射期间文件被截断或替换时，
+ * 读取缓冲区会抛出 {@link InternalError}（底层是 SIGBUS），调用方必须捕获并回退到输入流。
+ *
+ * @author kongweiguang
+ */
+public class XMappedJar {
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int CEN_SIZE = 46;
+    private static final int LOC_SIZE = 30;
+
+    private final ByteBuffer buffer;
+    private final Map<String, Long> entries = new HashMap<>();
+
+    /**
+     * @param buffer JAR包的内容，从 position 到 limit
+     */
+    public XMappedJar(ByteBuffer buffer) {
+        this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        parse();
+    }
+
+    /**
+     * 映射JAR包文件
+     *
+     * @param file JAR包文件
+     * @return 映射的JAR包，文件超过 2GB 时返回 {@code null}
+     * @throws IOException I/O 异常
+     */
+    public static XMappedJar map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return null;
+            }
+            return new XMappedJar(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * 解析中央目录，只记录 STORED 的记录的本地文件头偏移和大小；自解压脚本等前缀导致的整体偏移按中央目录的实际位置校正。
+     */
+    private void parse() {
+        int eocd = -1;
+        for (int i = buffer.limit() - EOCD_SIZE, end = Math.max(0, i - 0xFFFF); i >= end; i--) {
+            if (buffer.getInt(i) == EOCD_SIGNATURE) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            return;
+        }
+        int count = Short.toUnsignedInt(buffer.getShort(eocd + 10));
+        long size = Integer.toUnsignedLong(buffer.getInt(eocd + 12));
+        long offset = Integer.toUnsignedLong(buffer.getInt(eocd + 16));
+        if (count == 0xFFFF || size == 0xFFFFFFFFL || offset == 0xFFFFFFFFL || size > eocd) {
+            return;
+        }
+        long shift = eocd - size - offset;
+        Map<String, Long> stored = new HashMap<>();
+        int p = (int) (eocd - size);
+        for (int i = 0; i < count; i++) {
+            if (p + CEN_SIZE > eocd || buffer.getInt(p) != CEN_SIGNATURE) {
+                return;
+            }
+            int method = Short.toUnsignedInt(buffer.getShort(p + 10));
+            long length = Integer.toUnsignedLong(buffer.getInt(p + 20));
+            int nameLength = Short.toUnsignedInt(buffer.getShort(p + 28));
+            int extraLength = Short.toUnsignedInt(buffer.getShort(p + 30));
+            int commentLength = Short.toUnsignedInt(buffer.getShort(p + 32));
+            long local = Integer.toUnsignedLong(buffer.getInt(p + 42)) + shift;
+            byte[] bytes = new byte[nameLength];
+            buffer.get(p + CEN_SIZE, bytes);
+            String name = new String(bytes, StandardCharsets.UTF_8);
+            if (name.startsWith("META-INF/") && name.endsWith(".SF")) {
+                return;
+            }
+            if (method == 0 && local >= 0 && local + LOC_SIZE <= eocd && length <= Integer.MAX_VALUE) {
+                stored.put(name, (local << 32) | length);
+            }
+            p += CEN_SIZE + nameLength + extraLength + commentLength;
+        }
+        entries.putAll(stored);
+    }
+
+    /**
+     * 取出 STORED 的记录的数据
+     *
+     * @param name 记录名称
+     * @return 记录数据在映射缓冲区上的只读切片，记录不存在、不是 STORED 或格式不对时返回 {@code null}
+     */
+    public ByteBuffer entry(String name) {
+        Long location = entries.get(name);
+        if (location == null) {
+            return null;
+        }
+        int local = (int) (location >>> 32);
+        int length = (int) (location & 0xFFFFFFFFL);
+        if (buffer.getInt(local) != LOC_SIGNATURE) {
+            return null;
+        }
+        int data = local + LOC_SIZE + Short.toUnsignedInt(buffer.getShort(local + 26)) + Short.toUnsignedInt(buffer.getShort(local + 28));
+        if (data + length > buffer.limit()) {
+            return null;
+        }
+        return buffer.slice(data, length).asReadOnlyBuffer();
+    }
+
+    /**
+     * 解析 STORED 的内嵌JAR包
+     *
+     * @param name 内嵌JAR包的记录名称
+     * @return 内嵌JAR包，不存在或不是 STORED 时返回 {@code null}
+     */
+    public XMappedJar nested(String name) {
+        ByteBuffer data = entry(name);
+        return data != null ? new XMappedJar(data) : null;
+    }
+
+    /**
+     * @return STORED 的记录数
+     */
+    public int size() {
+        return entries.size();
+    }
+}
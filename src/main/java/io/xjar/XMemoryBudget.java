@@ -0,0 +1,52 @@
+package io.xjar;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 内存预算，限制一次加/解密过程中缓冲在内存里的字节总数，超出预算的数据由 {@link XSpillBuffer} 溢写到临时文件。
+ *
+ * @author kongweiguang
+ */
+public class XMemoryBudget {
+    private final AtomicLong available;
+
+    public XMemoryBudget(long capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        this.available = new AtomicLong(capacity);
+    }
+
+    /**
+     * 申请内存
+     *
+     * @param bytes 字节数
+     * @return 申请成功: {@code true} 预算不足: {@code false}
+     */
+    public boolean acquire(long bytes) {
+        long current;
+        do {
+            current = available.get();
+            if (current < bytes) {
+                return false;
+            }
+        } while (!available.compareAndSet(current, current - bytes));
+        return true;
+    }
+
+    /**
+     * 归还内存
+     *
+     * @param bytes 字节数
+     */
+    public void release(long bytes) {
+        available.addAndGet(bytes);
+    }
+
+    /**
+     * @return 剩余可用的字节数
+     */
+    public long available() {
+        return available.get();
+    }
+}
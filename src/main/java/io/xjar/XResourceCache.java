@@ -0,0 +1,136 @@
+package io.xjar;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 解密后的资源内容缓存，按字节数限制容量并按最近使用时间淘汰，超过存活时间的内容视为失效。
+ * Spring 启动和刷新过程中会多次读取同一个加密的 .yml/.properties/.xml 资源，命中时直接返回缓存的明文，不再重新解密。
+ * 以资源URL的文件部分为键；类文件由类加载器读取且只会读取一次，默认不缓存。
+ *
+ * @author kongweiguang
+ */
+public class XResourceCache {
+    private final long capacity;
+    private final long ttl;
+    private final boolean classes;
+    private final LinkedHashMap<String, Item> items = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private long size;
+
+    /**
+     * @param capacity 缓存容量，单位：字节
+     * @param ttl      存活时间，单位：毫秒，小于等于 0 时不失效
+     * @param classes  是否缓存类文件
+     */
+    public XResourceCache(long capacity, long ttl, boolean classes) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        this.capacity = capacity;
+        this.ttl = ttl;
+        this.classes = classes;
+    }
+
+    /**
+     * 判断资源是否可以缓存
+     *
+     * @param name 资源名称
+     * @return 可以缓存: {@code true} 否则: {@code false}
+     */
+    public boolean accepts(String name) {
+        return classes || !name.endsWith(".class");
+    }
+
+    /**
+     * 取出缓存的明文
+     *
+     * @param key 资源URL的文件部分
+     * @return 缓存的明文，没有命中或已经失效时返回 {@code null}，调用方不能修改
+     */
+    public synchronized byte[] get(String key) {
+        Item item = items.get(key);
+        if (item != null && ttl > 0 && System.currentTimeMillis() - item.time > ttl) {
+            items.remove(key);
+            size -= item.bytes.length;
+            item = null;
+        }
+        if (item == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return item.bytes;
+    }
+
+    /**
+     * 缓存明文，超出容量时淘汰最久没有使用的内容，大于容量的内容不缓存
+     *
+     * @param key   资源URL的文件部分
+     * @param bytes 明文，缓存后调用方不能再修改
+     */
+    public synchronized void put(String key, byte[] bytes) {
+        if (bytes.length > capacity) {
+            return;
+        }
+        Item previous = items.put(key, new Item(bytes, System.currentTimeMillis()));
+        if (previous != null) {
+            size -= previous.bytes.length;
+        }
+        size += bytes.length;
+        Iterator<Map.Entry<String, Item>> iterator = items.entrySet().iterator();
+        while (size > capacity && iterator.hasNext()) {
+            Item eldest = iterator.next().getValue();
+            iterator.remove();
+            size -= eldest.bytes.length;
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return 已缓存的字节数
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * @return 命中次数
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return 没有命中或已经失效的次数
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return 因超出容量被淘汰的次数
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", size=" + size();
+    }
+
+    private static final class Item {
+        private final byte[] bytes;
+        private final long time;
+
+        Item(byte[] bytes, long time) {
+            this.bytes = bytes;
+            this.time = time;
+        }
+    }
+}
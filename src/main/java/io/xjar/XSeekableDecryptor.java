@@ -0,0 +1,81 @@
+package io.xjar;
+
+import io.xjar.key.XKey;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.*;
+import java.security.GeneralSecurityException;
+
+/**
+ * 可跳转的解密器，与 {@link XSeekableEncryptor} 对应。
+ *
+ * @author kongweiguang
+ */
+public class XSeekableDecryptor implements XDecryptor {
+
+    @Override
+    public void decrypt(XKey key, File src, File dest) throws IOException {
+        try (
+                InputStream in = new FileInputStream(src);
+                OutputStream out = new FileOutputStream(dest)
+        ) {
+            decrypt(key, in, out);
+        }
+    }
+
+    @Override
+    public void decrypt(XKey key, InputStream in, OutputStream out) throws IOException {
+        try (InputStream dis = decrypt(key, in)) {
+            XKit.transfer(dis, out);
+        }
+    }
+
+    @Override
+    public XSeekableInputStream decrypt(XKey key, InputStream in) throws IOException {
+        return new XSeekableInputStream(key, in);
+    }
+
+    @Override
+    public OutputStream decrypt(XKey key, OutputStream out) throws IOException {
+        Cipher cipher;
+        try {
+            cipher = XSeekableInputStream.cipher(key);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+        return new FilterOutputStream(out) {
+            private final byte[] iv = new byte[cipher.getBlockSize()];
+            private int header;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (header < iv.length) {
+                    int n = Math.min(len, iv.length - header);
+                    System.arraycopy(b, off, iv, header, n);
+                    header += n;
+                    off += n;
+                    len -= n;
+                    if (header < iv.length) {
+                        return;
+                    }
+                    try {
+                        cipher.init(Cipher.DECRYPT_MODE, XSeekableInputStream.secretKey(key), new IvParameterSpec(iv));
+                    } catch (GeneralSecurityException e) {
+                        throw new IOException(e);
+                    }
+                    out = new CipherOutputStream(out, cipher);
+                }
+                if (len > 0) {
+                    out.write(b, off, len);
+                }
+            }
+        };
+    }
+}
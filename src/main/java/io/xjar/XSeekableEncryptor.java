@@ -0,0 +1,64 @@
+package io.xjar;
+
+import io.xjar.key.XKey;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.*;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+/**
+ * 可跳转的加密器，每个记录以一个分组长度的随机计数器初值开头，后面是 CTR 模式的密文，密文与明文等长。
+ * 运行时通过 {@link XSeekableInputStream} 读取，跳过和部分读取都不需要解密前面的内容，适合只读取部分内容的静态资源。
+ *
+ * @author kongweiguang
+ */
+public class XSeekableEncryptor implements XEncryptor {
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    @Override
+    public void encrypt(XKey key, File src, File dest) throws IOException {
+        try (
+                InputStream in = new FileInputStream(src);
+                OutputStream out = new FileOutputStream(dest)
+        ) {
+            encrypt(key, in, out);
+        }
+    }
+
+    @Override
+    public void encrypt(XKey key, InputStream in, OutputStream out) throws IOException {
+        try (OutputStream eos = encrypt(key, new XUnclosedOutputStream(out))) {
+            XKit.transfer(in, eos);
+        }
+    }
+
+    @Override
+    public InputStream encrypt(XKey key, InputStream in) throws IOException {
+        Cipher cipher = cipher(key);
+        byte[] iv = cipher.getIV();
+        return new SequenceInputStream(new ByteArrayInputStream(iv), new CipherInputStream(in, cipher));
+    }
+
+    @Override
+    public OutputStream encrypt(XKey key, OutputStream out) throws IOException {
+        Cipher cipher = cipher(key);
+        out.write(cipher.getIV());
+        return new CipherOutputStream(out, cipher);
+    }
+
+    private Cipher cipher(XKey key) throws IOException {
+        try {
+            Cipher cipher = XSeekableInputStream.cipher(key);
+            byte[] iv = new byte[cipher.getBlockSize()];
+            RANDOM.nextBytes(iv);
+            cipher.init(Cipher.ENCRYPT_MODE, XSeekableInputStream.secretKey(key), new IvParameterSpec(iv));
+            return cipher;
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+}
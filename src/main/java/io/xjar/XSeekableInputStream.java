@@ -0,0 +1,184 @@
+package io.xjar;
+
+import io.xjar.key.XKey;
+import io.xjar.key.XSymmetricKey;
+
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+
+/**
+ * 可跳转的解密输入流，对应 {@link XSeekableEncryptor} 的记录格式：一个分组长度的随机计数器初值，后面紧跟 CTR 模式的密文。
+ * CTR 模式下任意位置的密钥流只取决于计数器初值和分组序号，所以 {@link #skip(long)} 直接跳过底层的密文，
+ * 再把计数器定位到目标分组，不需要解密跳过的内容。
+ *
+ * @author kongweiguang
+ */
+public class XSeekableInputStream extends FilterInputStream {
+    private final Cipher cipher;
+    private final SecretKeySpec secretKey;
+    private final byte[] iv;
+    private long position;
+
+    public XSeekableInputStream(XKey key, InputStream in) throws IOException {
+        super(in);
+        try {
+            this.cipher = cipher(key);
+            this.secretKey = secretKey(key);
+            this.iv = new byte[cipher.getBlockSize()];
+            int n = in.readNBytes(iv, 0, iv.length);
+            if (n < iv.length) {
+                throw new EOFException("truncated seekable entry header");
+            }
+            cipher.init(Cipher.DECRYPT_MODE, secretKey, new IvParameterSpec(iv));
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return n < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n <= 0) {
+            return n;
+        }
+        try {
+            cipher.update(b, off, n, b, off);
+        } catch (ShortBufferException e) {
+            throw new IOException(e);
+        }
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        long skipped = 0;
+        while (skipped < n) {
+            long s = in.skip(n - skipped);
+            if (s <= 0) {
+                if (in.read() < 0) {
+                    break;
+                }
+                s = 1;
+            }
+            skipped += s;
+        }
+        seek(position + skipped);
+        return skipped;
+    }
+
+    /**
+     * @return 当前在明文中的位置
+     */
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * 把计数器定位到明文的指定位置，分组内的偏移用一段空数据推进密钥流。
+     */
+    private void seek(long target) throws IOException {
+        int blockSize = iv.length;
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, secretKey, new IvParameterSpec(counter(iv, target / blockSize)));
+            int offset = (int) (target % blockSize);
+            if (offset > 0) {
+                cipher.update(new byte[offset]);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+        position = target;
+    }
+
+    /**
+     * 创建记录所用的 CTR 模式的 {@link Cipher}，算法取密钥算法的名称部分，如 AES/CBC/PKCS5Padding 取 AES。
+     * CTR 模式没有完整性校验，认证加密算法的密钥直接拒绝，不会悄悄退化成不认证的 CTR 模式。
+     */
+    static Cipher cipher(XKey key) throws GeneralSecurityException {
+        if (!(key instanceof XSymmetricKey)) {
+            throw new GeneralSecurityException("seekable entries require a symmetric key");
+        }
+        if (XCipherEngine.isAead(key.getAlgorithm())) {
+            throw new GeneralSecurityException("seekable entries are not authenticated and cannot be used with " + key.getAlgorithm());
+        }
+        Cipher cipher = Cipher.getInstance(algorithm(key) + "/CTR/NoPadding");
+        if (cipher.getBlockSize() <= 0) {
+            throw new GeneralSecurityException("seekable entries require a block cipher: " + key.getAlgorithm());
+        }
+        return cipher;
+    }
+
+    static SecretKeySpec secretKey(XKey key) {
+        return new SecretKeySpec(((XSymmetricKey) key).getSecretKey(), algorithm(key));
+    }
+
+    private static String algorithm(XKey key) {
+        String algorithm = key.getAlgorithm();
+        int index = algorithm.indexOf('/');
+        return index < 0 ? algorithm : algorithm.substring(0, index);
+    }
+
+    /**
+     * 计数器初值按大端整数加上分组序号，与 JDK 的 CTR 实现递增计数器的方式一致。
+     */
+    static byte[] counter(byte[] iv, long block) {
+        byte[] counter = iv.clone();
+        long carry = block;
+        for (int i = counter.length - 1; i >= 0 && carry != 0; i--) {
+            long sum = (counter[i] & 0xFF) + (carry & 0xFF);
+            counter[i] = (byte) sum;
+            carry = (carry >>> 8) + (sum >>> 8);
+        }
+        return counter;
+    }
+
+    /**
+     * 计算记录的明文长度
+     *
+     * @param key    密钥
+     * @param length 记录长度
+     * @return 明文长度，记录长度未知时返回 -1
+     */
+    public static long length(XKey key, long length) {
+        if (length < 0) {
+            return -1;
+        }
+        try {
+            return Math.max(0, length - cipher(key).getBlockSize());
+        } catch (GeneralSecurityException e) {
+            return -1;
+        }
+    }
+}
@@ -20,13 +20,19 @@ import java.util.jar.Manifest;
  * 2020/4/27 16:13
  */
 public class XSmartEncryptor extends XEntryEncryptor<JarArchiveEntry> implements XEncryptor, XConstants {
+    private final XEncryptOptions options;
 
     public XSmartEncryptor(XEncryptor xEncryptor) {
-        super(xEncryptor);
+        this(xEncryptor, null);
     }
 
     public XSmartEncryptor(XEncryptor xEncryptor, XEntryFilter<JarArchiveEntry> filter) {
+        this(xEncryptor, filter, new XEncryptOptions());
+    }
+
+    public XSmartEncryptor(XEncryptor xEncryptor, XEntryFilter<JarArchiveEntry> filter, XEncryptOptions options) {
         super(xEncryptor, filter);
+        this.options = options;
     }
 
     @Override
@@ -35,7 +41,7 @@ public class XSmartEncryptor extends XEntryEncryptor<JarArchiveEntry> implements
             Manifest manifest = jar.getManifest();
             Attributes attributes = manifest.getMainAttributes();
             String version = attributes.getValue("Spring-Boot-Version");
-            XEncryptor encryptor = version != null ? new XBootEncryptor(xEncryptor, filter) : new XJarEncryptor(xEncryptor, filter);
+            XEncryptor encryptor = version != null ? new XBootEncryptor(xEncryptor, filter, options) : new XJarEncryptor(xEncryptor, filter, options);
             encryptor.encrypt(key, src, dest);
         }
     }
@@ -0,0 +1,207 @@
+package io.xjar;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * 可溢写的缓冲区，在 {@link XMemoryBudget} 允许的范围内缓冲在内存中，预算不足时将已有数据和后续数据溢写到临时文件。
+ * 内存缓冲按实际分配的数组容量而不是写入的字节数占用预算，扩容前先申请预算，申请不到时溢写而不再扩容。
+ * 写入的同时计算数据的 CRC32 和长度，可直接用于 STORED 记录，缓冲完成后可以多次读取。
+ * 临时文件都放在同一个临时目录中，只有该目录注册退出时删除，临时文件本身在关闭时删除。
+ *
+ * @author kongweiguang
+ */
+public class XSpillBuffer extends OutputStream {
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+    private static volatile File directory;
+
+    private final XMemoryBudget budget;
+    private final CRC32 crc = new CRC32();
+    private XByteArrayOutputStream memory = new XByteArrayOutputStream(0);
+    private long acquired;
+    private long size;
+    private File file;
+    private OutputStream out;
+    private boolean closed;
+
+    public XSpillBuffer(XMemoryBudget budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("buffer closed");
+        }
+        if (file == null && !reserve(size + len)) {
+            spill();
+        }
+        if (file == null) {
+            memory.write(b, off, len);
+        } else {
+            out.write(b, off, len);
+        }
+        crc.update(b, off, len);
+        size += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    /**
+     * 确保内存缓冲的容量足够，扩容时优先按两倍容量申请预算，不够时只申请所需的容量
+     *
+     * @param required 所需的容量
+     * @return 容量足够: {@code true} 预算不足: {@code false}
+     */
+    private boolean reserve(long required) {
+        if (required <= acquired) {
+            return true;
+        }
+        if (required > MAX_CAPACITY) {
+            return false;
+        }
+        long doubled = Math.min(Math.max(required, acquired * 2), MAX_CAPACITY);
+        long capacity = budget.acquire(doubled - acquired) ? doubled : budget.acquire(required - acquired) ? required : -1;
+        if (capacity < 0) {
+            return false;
+        }
+        memory.grow((int) capacity);
+        acquired = capacity;
+        return true;
+    }
+
+    private void spill() throws IOException {
+        file = Files.createTempFile(directory().toPath(), "xjar", ".tmp").toFile();
+        out = new BufferedOutputStream(new FileOutputStream(file));
+        memory.writeTo(out);
+        memory = null;
+        budget.release(acquired);
+        acquired = 0;
+    }
+
+    /**
+     * 打开一个读取已缓冲数据的输入流，可多次打开
+     *
+     * @return 输入流
+     * @throws IOException I/O 异常
+     */
+    public InputStream openStream() throws IOException {
+        if (closed) {
+            throw new IOException("buffer closed");
+        }
+        if (file == null) {
+            return memory.toInputStream();
+        }
+        out.flush();
+        return new BufferedInputStream(new FileInputStream(file));
+    }
+
+    /**
+     * 将已缓冲数据写入输出流
+     *
+     * @param out 输出流
+     * @throws IOException I/O 异常
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        if (closed) {
+            throw new IOException("buffer closed");
+        }
+        if (file == null) {
+            memory.writeTo(out);
+            return;
+        }
+        try (InputStream in = openStream()) {
+            XKit.transfer(in, out);
+        }
+    }
+
+    /**
+     * @return 已缓冲的字节数
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return 已缓冲数据的 CRC32
+     */
+    public long crc() {
+        return crc.getValue();
+    }
+
+    /**
+     * @return 是否已溢写到临时文件
+     */
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * 释放占用的内存预算并删除临时文件
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        memory = null;
+        budget.release(acquired);
+        acquired = 0;
+        if (file != null) {
+            try {
+                out.close();
+            } finally {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    /**
+     * 溢写的临时目录，整个进程共用一个，只注册一次退出时删除
+     */
+    private static File directory() throws IOException {
+        File dir = directory;
+        if (dir == null || !dir.isDirectory()) {
+            synchronized (XSpillBuffer.class) {
+                dir = directory;
+                if (dir == null || !dir.isDirectory()) {
+                    dir = Files.createTempDirectory("xjar").toFile();
+                    dir.deleteOnExit();
+                    directory = dir;
+                }
+            }
+        }
+        return dir;
+    }
+
+    /**
+     * 可以不拷贝内部数组直接读取，并由调用方控制扩容的字节数组输出流
+     */
+    private static final class XByteArrayOutputStream extends ByteArrayOutputStream {
+
+        private XByteArrayOutputStream(int size) {
+            super(size);
+        }
+
+        private void grow(int capacity) {
+            buf = Arrays.copyOf(buf, capacity);
+        }
+
+        private InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package io.xjar;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLStreamHandler;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 绑定了 XJar 协议处理器的资源URL的缓存。类加载器每定位到一个资源都要把原始URL包装成使用 XJar 协议处理器的URL，
+ * 而 Spring 扫描类路径时同一个资源会被反复定位，这里按原始URL的文件部分缓存包装后的URL，命中时直接返回同一个实例。
+ * 没有任何加密资源的类路径下的资源不包装，原样返回。包装前的原始URL与包装后的URL一起缓存，协议处理器可以通过 {@link #unwrap(URL)} 直接取回。
+ * 缓存的数量有上限，按最近使用时间淘汰；为了减少并发扫描类路径时的锁竞争，缓存按键的哈希分成若干段，每段各自加锁、各自淘汰。
+ *
+ * @author kongweiguang
+ */
+public class XURLCache {
+    private static final int SEGMENTS = 16;
+
+    private final URLStreamHandler handler;
+    private final XEntryIndex xEntryIndex;
+    private final Segment[] segments;
+
+    /**
+     * @param handler     XJar 协议处理器
+     * @param xEntryIndex 加密资源索引，明文类路径下的资源不包装
+     * @param capacity    缓存的URL数量上限，平均分给各段，小于等于 0 时不缓存
+     */
+    public XURLCache(URLStreamHandler handler, XEntryIndex xEntryIndex, int capacity) {
+        this.handler = handler;
+        this.xEntryIndex = xEntryIndex;
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(capacity <= 0 ? 0 : Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS));
+        }
+    }
+
+    /**
+     * 把原始URL包装成使用 XJar 协议处理器的URL，所在类路径没有任何加密资源时不需要包装，
+     * 之后打开连接也就直接由原始的协议处理器处理，完全不经过加密索引。
+     *
+     * @param url 原始URL
+     * @return 使用 XJar 协议处理器的URL，明文类路径下的资源或包装失败时返回原始URL
+     */
+    public URL wrap(URL url) {
+        if (xEntryIndex.isPlain(url)) {
+            return url;
+        }
+        String file = url.getFile();
+        Segment segment = segment(file);
+        Binding binding = segment.get(file);
+        if (binding != null && same(binding.wrapped, url)) {
+            return binding.wrapped;
+        }
+        URL wrapped;
+        try {
+            wrapped = bind(url, handler);
+        } catch (MalformedURLException e) {
+            return url;
+        }
+        segment.put(file, new Binding(url, wrapped));
+        return wrapped;
+    }
+
+    /**
+     * 逐个包装类加载器找到的多个资源URL，见 {@link #wrap(URL)}
+     *
+     * @param urls 原始URL
+     * @return 使用 XJar 协议处理器的URL
+     */
+    public Enumeration<URL> wrap(Enumeration<URL> urls) {
+        return new Enumeration<URL>() {
+            @Override
+            public boolean hasMoreElements() {
+                return urls.hasMoreElements();
+            }
+
+            @Override
+            public URL nextElement() {
+                URL url = urls.nextElement();
+                return url != null ? wrap(url) : null;
+            }
+        };
+    }
+
+    /**
+     * 取出包装前的原始URL，协议处理器打开连接时直接使用，不需要重新解析URL
+     *
+     * @param wrapped 使用 XJar 协议处理器的URL
+     * @return 原始URL，不是由本缓存包装或已被淘汰时返回 {@code null}
+     */
+    public URL unwrap(URL wrapped) {
+        Binding binding = segment(wrapped.getFile()).get(wrapped.getFile());
+        return binding != null && (binding.wrapped == wrapped || same(binding.wrapped, wrapped)) ? binding.original : null;
+    }
+
+    private static boolean same(URL a, URL b) {
+        return a.getPort() == b.getPort()
+                && a.getProtocol().equals(b.getProtocol())
+                && Objects.equals(a.getHost(), b.getHost());
+    }
+
+    /**
+     * 用指定的协议处理器重建URL，JDK 没有不经过字符串解析又能指定协议处理器的替代方法，这里集中使用已过时的构造器。
+     */
+    @SuppressWarnings("deprecation")
+    private static URL bind(URL url, URLStreamHandler handler) throws MalformedURLException {
+        return new URL(url.getProtocol(), url.getHost(), url.getPort(), url.getFile(), handler);
+    }
+
+    private Segment segment(String file) {
+        int hash = file.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * @return 已缓存的URL数量
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * 缓存的一段，按访问顺序排列，超出容量时淘汰最久没有使用的URL
+     */
+    private static final class Segment {
+        private final LinkedHashMap<String, Binding> urls;
+
+        Segment(int capacity) {
+            this.urls = new LinkedHashMap<String, Binding>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Binding> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized Binding get(String file) {
+            return urls.get(file);
+        }
+
+        synchronized void put(String file, Binding binding) {
+            urls.put(file, binding);
+        }
+
+        synchronized int size() {
+            return urls.size();
+        }
+    }
+
+    private static final class Binding {
+        private final URL original;
+        private final URL wrapped;
+
+        Binding(URL original, URL wrapped) {
+            this.original = original;
+            this.wrapped = wrapped;
+        }
+    }
+}
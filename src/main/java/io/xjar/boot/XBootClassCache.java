@@ -0,0 +1,111 @@
+package io.xjar.boot;
+
+import java.nio.ByteBuffer;
+import java.security.CodeSource;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 预解密的类字节码缓存，按字节数限制容量。
+ * 类一旦被定义就通过 {@link #take(String)} 取出并留下标记，之后迟到的预解密结果不会再被缓存，从而及时释放内存。
+ *
+ * @author kongweiguang
+ */
+public class XBootClassCache {
+    private static final Entry DEFINED = new Entry(ByteBuffer.allocate(0), null);
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong size = new AtomicLong();
+    private final long capacity;
+
+    public XBootClassCache(long capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * 缓存解密后的类字节码
+     *
+     * @param name       类名
+     * @param bytes      解密后的字节码，从 position 到 limit
+     * @param codeSource 类的代码来源
+     * @return 缓存成功: {@code true} 容量不足或该类已被缓存/定义: {@code false}
+     */
+    public boolean put(String name, ByteBuffer bytes, CodeSource codeSource) {
+        int length = bytes.remaining();
+        if (size.addAndGet(length) > capacity) {
+            size.addAndGet(-length);
+            return false;
+        }
+        if (entries.putIfAbsent(name, new Entry(bytes, codeSource)) != null) {
+            size.addAndGet(-length);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 判断类是否已被缓存或已经定义
+     *
+     * @param name 类名
+     * @return 已被缓存或已经定义: {@code true} 否则: {@code false}
+     */
+    public boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    /**
+     * 取出类字节码并标记该类已经定义，之后同名的 {@link #put(String, ByteBuffer, CodeSource)} 都会被忽略。
+     *
+     * @param name 类名
+     * @return 缓存的类字节码，没有命中时返回 {@code null}
+     */
+    public Entry take(String name) {
+        Entry entry = entries.put(name, DEFINED);
+        if (entry == null || entry == DEFINED) {
+            return null;
+        }
+        size.addAndGet(-entry.length);
+        return entry;
+    }
+
+    /**
+     * @return 已缓存的字节数是否达到容量
+     */
+    public boolean isFull() {
+        return size.get() >= capacity;
+    }
+
+    /**
+     * @return 已缓存的字节数
+     */
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * 缓存的类字节码及其代码来源
+     */
+    public static final class Entry {
+        private final ByteBuffer bytes;
+        private final int length;
+        private final CodeSource codeSource;
+
+        Entry(ByteBuffer bytes, CodeSource codeSource) {
+            this.bytes = bytes;
+            this.length = bytes.remaining();
+            this.codeSource = codeSource;
+        }
+
+        public ByteBuffer getBytes() {
+            return bytes;
+        }
+
+        public CodeSource getCodeSource() {
+            return codeSource;
+        }
+    }
+}
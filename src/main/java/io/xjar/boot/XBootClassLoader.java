@@ -1,22 +1,28 @@
 package io.xjar.boot;
 
+import io.xjar.XConstants;
 import io.xjar.XDecryptor;
+import io.xjar.XEncryptedClassPath;
 import io.xjar.XEncryptor;
+import io.xjar.XEntryIndex;
 import io.xjar.XKit;
+import io.xjar.XResourceCache;
+import io.xjar.XURLCache;
 import io.xjar.key.XKey;
-import io.xjar.reflection.XReflection;
+import io.xjar.reflection.XClassPath;
 import org.springframework.boot.loader.launch.LaunchedClassLoader;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Method;
-import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLClassLoader;
-import java.security.CodeSigner;
+import java.net.URLConnection;
 import java.security.CodeSource;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
 
 
 /**
@@ -26,11 +32,15 @@ import java.util.Enumeration;
  * 2018/11/23 23:04
  */
 public class XBootClassLoader extends LaunchedClassLoader {
+    private final XEntryIndex xEntryIndex;
     private final XBootURLHandler xBootURLHandler;
-    private final Object urlClassPath;
-    private final Method getResource;
-    private final Method getCodeSourceURL;
-    private final Method getCodeSigners;
+    private final XClassPath xClassPath;
+    private final XEncryptedClassPath xEncryptedClassPath;
+    private final XURLCache xBootURLCache;
+    private volatile XBootClassCache xBootClassCache;
+    private volatile XBootProfile xBootProfile;
+    private volatile XBootPrefetcher xBootPrefetcher;
+    private volatile XBootDecryptPool xBootDecryptPool;
 
     static {
         ClassLoader.registerAsParallelCapable();
@@ -38,11 +48,11 @@ public class XBootClassLoader extends LaunchedClassLoader {
 
     public XBootClassLoader(URL[] urls, ClassLoader parent, XDecryptor xDecryptor, XEncryptor xEncryptor, XKey xKey) throws Exception {
         super(true, urls, parent);
-        this.xBootURLHandler = new XBootURLHandler(xDecryptor, xEncryptor, xKey, this);
-        this.urlClassPath = XReflection.field(URLClassLoader.class, "ucp").get(this).value();
-        this.getResource = XReflection.method(urlClassPath.getClass(), "getResource", String.class).method();
-        this.getCodeSourceURL = XReflection.method(getResource.getReturnType(), "getCodeSourceURL").method();
-        this.getCodeSigners = XReflection.method(getResource.getReturnType(), "getCodeSigners").method();
+        this.xEntryIndex = new XEntryIndex(this);
+        this.xBootURLHandler = new XBootURLHandler(xDecryptor, xEncryptor, xKey, xEntryIndex);
+        this.xClassPath = new XClassPath(this);
+        this.xEncryptedClassPath = new XEncryptedClassPath(xClassPath, xEntryIndex, xDecryptor, xKey);
+        this.xBootURLCache = new XURLCache(xBootURLHandler, xEntryIndex, XConstants.DEFAULT_URL_CACHE_CAPACITY);
     }
 
     @Override
@@ -51,11 +61,11 @@ public class XBootClassLoader extends LaunchedClassLoader {
         if (url == null) {
             return null;
         }
-        try {
-            return new URL(url.getProtocol(), url.getHost(), url.getPort(), url.getFile(), xBootURLHandler);
-        } catch (MalformedURLException e) {
-            return url;
+        XBootProfile profile = this.xBootProfile;
+        if (profile != null) {
+            profile.record(name);
         }
+        return wrap(url);
     }
 
     @Override
@@ -64,27 +74,223 @@ public class XBootClassLoader extends LaunchedClassLoader {
         if (enumeration == null) {
             return null;
         }
-        return new XBootEnumeration(enumeration);
+        XBootProfile profile = this.xBootProfile;
+        if (profile != null && enumeration.hasMoreElements()) {
+            profile.record(name);
+        }
+        XURLCache cache = this.xBootURLCache;
+        return cache != null ? cache.wrap(enumeration) : enumeration;
+    }
+
+    /**
+     * 启动预解密：在后台用 {@code threads} 个线程并行解密索引中的所有加密类，放入容量为 {@code capacity} 字节的缓存，
+     * 之后 {@link #findClass(String)} 优先从缓存中取出，类定义后立即从缓存中移除。
+     *
+     * @param threads  预解密线程数
+     * @param capacity 缓存容量，单位：字节
+     */
+    public void warmup(int threads, long capacity) {
+        XBootClassCache cache = new XBootClassCache(capacity);
+        this.xBootClassCache = cache;
+        ForkJoinPool pool = new ForkJoinPool(Math.max(threads, 1));
+        for (String path : xEntryIndex.names()) {
+            if (path.endsWith(".class")) {
+                pool.execute(() -> preload(cache, path));
+            }
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * 训练运行：记录类和资源第一次被加载的顺序，JVM 退出时写入 {@code file}，每行一个资源名称。
+     * 加密时通过 {@code XEncryption#profile(String)} 指定该文件，BOOT-INF/classes 下的记录按此顺序写入加密包，
+     * 冷启动时对加密包的读取接近顺序读取。
+     *
+     * @param file 记录文件
+     */
+    public void record(File file) {
+        XBootProfile profile = new XBootProfile();
+        this.xBootProfile = profile;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                profile.write(file);
+            } catch (IOException e) {
+                System.err.println("could not write xjar profile " + file + ": " + e);
+            }
+        }, "xjar-profile"));
+    }
+
+    /**
+     * 按启动顺序记录预解密：读取加密时写入的启动顺序记录，在后台低优先级线程中沿着记录的顺序最多领先 {@code window} 个类解密，
+     * 放入容量为 {@code capacity} 字节的缓存，代替 {@link #warmup(int, long)} 的缓存。加密包中没有启动顺序记录时不做任何事。
+     *
+     * @param window   领先加载进度的类数
+     * @param capacity 缓存容量，单位：字节
+     * @throws IOException 读取启动顺序记录失败
+     */
+    public void prefetch(int window, long capacity) throws IOException {
+        URL url = super.findResource(XConstants.XJAR_INF_DIR + XConstants.XJAR_INF_PROFILE);
+        if (url == null) {
+            return;
+        }
+        List<String> order = new ArrayList<>();
+        try (InputStream in = url.openStream()) {
+            for (String path : XBootProfile.read(in)) {
+                if (path.endsWith(".class") && xEntryIndex.maybeContains(path)) {
+                    order.add(path);
+                }
+            }
+        }
+        XBootClassCache cache = new XBootClassCache(capacity);
+        XBootPrefetcher prefetcher = new XBootPrefetcher(order, window, cache, this::prefetchClass);
+        this.xBootClassCache = cache;
+        this.xBootPrefetcher = prefetcher;
+        prefetcher.start();
+    }
+
+    /**
+     * @return 按启动顺序记录预解密的统计，没有开启时返回 {@code null}
+     */
+    public XBootPrefetcher getPrefetcher() {
+        return xBootPrefetcher;
+    }
+
+    /**
+     * 开启类定义前的解密线程池：加载加密类时在取得类加载锁之前就交给 {@code threads} 个线程解密，
+     * 解密与等锁和父加载器委派同时进行，{@link #findClass(String)} 在锁内取结果时解密还没有完成则在锁内等待，
+     * 并发加载同一个类的线程共用同一次解密，见 {@link XBootDecryptPool}。
+     *
+     * @param threads 解密线程数，小于等于 0 时关闭
+     */
+    public void decrypt(int threads) {
+        XBootDecryptPool previous = this.xBootDecryptPool;
+        this.xBootDecryptPool = threads > 0 ? new XBootDecryptPool(threads, this::prefetchClass) : null;
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    /**
+     * @return 类定义前的解密线程池的统计，没有开启时返回 {@code null}
+     */
+    public XBootDecryptPool getDecryptPool() {
+        return xBootDecryptPool;
+    }
+
+    private XBootClassCache.Entry prefetchClass(String name, String path) throws Exception {
+        return findLoadedClass(name) != null ? null : readEncryptedClass(path);
+    }
+
+    private void preload(XBootClassCache cache, String path) {
+        if (cache.isFull()) {
+            return;
+        }
+        String name = path.substring(0, path.length() - ".class".length()).replace('/', '.');
+        if (findLoadedClass(name) != null) {
+            return;
+        }
+        try {
+            XBootClassCache.Entry entry = readEncryptedClass(path);
+            if (entry != null) {
+                cache.put(name, entry.getBytes(), entry.getCodeSource());
+            }
+        } catch (Throwable ignored) {
+            // 预解密失败时交由 findClass 按需加载并报告异常
+        }
+    }
+
+    /**
+     * 开启或关闭内存映射读取，见 {@link XEncryptedClassPath#mmap(boolean)}
+     *
+     * @param enabled 是否开启
+     */
+    public void mmap(boolean enabled) {
+        xEncryptedClassPath.mmap(enabled);
+    }
+
+    /**
+     * 开启解密后的资源内容缓存，重复读取同一个加密资源时直接返回缓存的明文。
+     *
+     * @param xResourceCache 解密后的资源内容缓存，为 {@code null} 时关闭
+     */
+    public void cache(XResourceCache xResourceCache) {
+        xBootURLHandler.cache(xResourceCache);
+    }
+
+    /**
+     * @return 解密后的资源内容缓存的统计，没有开启时返回 {@code null}
+     */
+    public XResourceCache getResourceCache() {
+        return xBootURLHandler.getResourceCache();
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        XBootDecryptPool pool = this.xBootDecryptPool;
+        if (pool == null || findLoadedClass(name) != null) {
+            return super.loadClass(name, resolve);
+        }
+        String path = name.replace('.', '/').concat(".class");
+        XBootClassCache cache = this.xBootClassCache;
+        if (!xEntryIndex.maybeContains(path) || cache != null && cache.contains(name)) {
+            return super.loadClass(name, resolve);
+        }
+        FutureTask<XBootClassCache.Entry> task = pool.submit(name, path);
+        try {
+            return super.loadClass(name, resolve);
+        } finally {
+            pool.release(name, task);
+        }
     }
 
     @Override
     protected Class<?> findClass(String name) throws ClassNotFoundException {
+        String path = name.replace('.', '/').concat(".class");
+        Class<?> clazz = findClassByPath(name, path);
+        XBootProfile profile = this.xBootProfile;
+        if (profile != null) {
+            profile.record(path);
+        }
+        return clazz;
+    }
+
+    private Class<?> findClassByPath(String name, String path) throws ClassNotFoundException {
+        if (xEntryIndex.maybeContains(path)) {
+            XBootClassCache cache = this.xBootClassCache;
+            XBootClassCache.Entry entry = cache != null ? cache.take(name) : null;
+            XBootPrefetcher prefetcher = this.xBootPrefetcher;
+            if (prefetcher != null) {
+                prefetcher.consumed(path, entry != null);
+            }
+            try {
+                XBootDecryptPool pool = this.xBootDecryptPool;
+                if (entry == null && pool != null) {
+                    entry = pool.take(name);
+                }
+                if (entry == null) {
+                    entry = readEncryptedClass(path);
+                }
+                if (entry != null) {
+                    return defineClass(name, entry.getBytes(), entry.getCodeSource());
+                }
+            } catch (Throwable t) {
+                throw new ClassNotFoundException(name, t);
+            }
+        }
         try {
             return super.findClass(name);
         } catch (ClassFormatError e) {
-            String path = name.replace('.', '/').concat(".class");
             URL url = findResource(path);
             if (url == null) {
                 throw new ClassNotFoundException(name, e);
             }
-            try (InputStream in = url.openStream()) {
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                XKit.transfer(in, bos);
-                byte[] bytes = bos.toByteArray();
-                Object resource = getResource.invoke(urlClassPath, path);
-                URL codeSourceURL = (URL) getCodeSourceURL.invoke(resource);
-                CodeSigner[] codeSigners = (CodeSigner[]) getCodeSigners.invoke(resource);
-                CodeSource codeSource = new CodeSource(codeSourceURL, codeSigners);
+            try {
+                URLConnection connection = url.openConnection();
+                byte[] bytes;
+                try (InputStream in = connection.getInputStream()) {
+                    bytes = XKit.read(in, connection.getContentLengthLong());
+                }
+                CodeSource codeSource = xClassPath.getCodeSource(xClassPath.getResource(path));
                 return defineClass(name, bytes, 0, bytes.length, codeSource);
             } catch (Throwable t) {
                 throw new ClassNotFoundException(name, t);
@@ -92,29 +298,23 @@ public class XBootClassLoader extends LaunchedClassLoader {
         }
     }
 
-    private class XBootEnumeration implements Enumeration<URL> {
-        private final Enumeration<URL> enumeration;
-
-        XBootEnumeration(Enumeration<URL> enumeration) {
-            this.enumeration = enumeration;
-        }
-
-        @Override
-        public boolean hasMoreElements() {
-            return enumeration.hasMoreElements();
-        }
+    /**
+     * 直接定位并解密索引中记录的加密类
+     *
+     * @param path 类资源路径
+     * @return 解密后的类字节码，当该资源实际定位到的类路径中没有被加密时返回 {@code null}
+     * @throws Exception 读取或解密失败
+     */
+    private XBootClassCache.Entry readEncryptedClass(String path) throws Exception {
+        XEncryptedClassPath.Entry entry = xEncryptedClassPath.read(path);
+        return entry != null ? new XBootClassCache.Entry(entry.getBytes(), entry.getCodeSource()) : null;
+    }
 
-        @Override
-        public URL nextElement() {
-            URL url = enumeration.nextElement();
-            if (url == null) {
-                return null;
-            }
-            try {
-                return new URL(url.getProtocol(), url.getHost(), url.getPort(), url.getFile(), xBootURLHandler);
-            } catch (MalformedURLException e) {
-                return url;
-            }
-        }
+    /**
+     * 把原始URL包装成使用 XJar 协议处理器的URL，构造过程中读取加密索引时缓存尚未创建，直接返回原始URL。
+     */
+    private URL wrap(URL url) {
+        XURLCache cache = this.xBootURLCache;
+        return cache != null ? cache.wrap(url) : url;
     }
 }
@@ -0,0 +1,159 @@
+package io.xjar.boot;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 类定义前的解密线程池：{@link XBootClassLoader#loadClass(String, boolean)} 在取得类加载锁之前就把加密类交给线程池解密，
+ * 之后的等锁和锁内的父加载器委派与解密同时进行。{@link XBootClassLoader#findClass(String)} 仍然在类加载锁内取结果：
+ * 解密还没有完成时在锁内等待，还没有开始时在锁内自己解密，这段时间同一个类的其他加载线程都在等锁，
+ * 因此只有解密耗时不超过父加载器委派时才完全重叠，剩余的部分记在 {@link #getWaited()} 中。
+ * 同一个类同时只解密一次，并发加载同一个类的线程共用同一个结果；线程池还没来得及开始的解密由取结果的线程自己完成，不会排队等待。
+ *
+ * @author kongweiguang
+ */
+public class XBootDecryptPool {
+    private final ExecutorService executor;
+    private final XBootPrefetcher.Loader loader;
+    private final ConcurrentMap<String, FutureTask<XBootClassCache.Entry>> tasks = new ConcurrentHashMap<>();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+    private final AtomicLong stolen = new AtomicLong();
+    private final AtomicLong waited = new AtomicLong();
+
+    /**
+     * @param threads 解密线程数
+     * @param loader  解密类的方法
+     */
+    public XBootDecryptPool(int threads, XBootPrefetcher.Loader loader) {
+        AtomicInteger index = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(Math.max(threads, 1), Math.max(threads, 1), 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> new Worker(runnable, "xjar-decrypt-" + index.incrementAndGet()));
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+        this.loader = loader;
+    }
+
+    /**
+     * 开始解密类，该类已经在解密时返回进行中的解密
+     *
+     * @param name 类名
+     * @param path 类资源路径
+     * @return 解密任务
+     */
+    public FutureTask<XBootClassCache.Entry> submit(String name, String path) {
+        FutureTask<XBootClassCache.Entry> task = tasks.get(name);
+        if (task != null) {
+            shared.incrementAndGet();
+            return task;
+        }
+        FutureTask<XBootClassCache.Entry> created = new FutureTask<>(() -> {
+            if (!(Thread.currentThread() instanceof Worker)) {
+                stolen.incrementAndGet();
+            }
+            return loader.load(name, path);
+        });
+        task = tasks.putIfAbsent(name, created);
+        if (task != null) {
+            shared.incrementAndGet();
+            return task;
+        }
+        submitted.incrementAndGet();
+        try {
+            executor.execute(created);
+        } catch (RejectedExecutionException ignored) {
+            // 线程池已关闭时由取结果的线程自己解密
+        }
+        return created;
+    }
+
+    /**
+     * 取出类的解密结果，线程池还没有开始解密时在当前线程解密
+     *
+     * @param name 类名
+     * @return 解密后的类字节码，没有进行中的解密、该类已经被加载或没有被加密时返回 {@code null}
+     * @throws Exception 读取或解密失败
+     */
+    public XBootClassCache.Entry take(String name) throws Exception {
+        FutureTask<XBootClassCache.Entry> task = tasks.get(name);
+        if (task == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        task.run();
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } finally {
+            waited.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 类加载结束后释放解密任务
+     *
+     * @param name 类名
+     * @param task 解密任务
+     */
+    public void release(String name, FutureTask<XBootClassCache.Entry> task) {
+        tasks.remove(name, task);
+    }
+
+    /**
+     * 关闭线程池，进行中的解密仍会完成
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * @return 交给线程池解密的类数
+     */
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    /**
+     * @return 并发加载同一个类时共用进行中的解密的次数
+     */
+    public long getShared() {
+        return shared.get();
+    }
+
+    /**
+     * @return 线程池还没有开始解密而由取结果的线程自己解密的次数
+     */
+    public long getStolen() {
+        return stolen.get();
+    }
+
+    /**
+     * @return 在类加载锁内取出解密结果的总时长，包括自己解密的时间，单位：纳秒
+     */
+    public long getWaited() {
+        return waited.get();
+    }
+
+    @Override
+    public String toString() {
+        return "submitted=" + submitted + ", shared=" + shared + ", stolen=" + stolen + ", waited=" + TimeUnit.NANOSECONDS.toMillis(waited.get()) + "ms";
+    }
+
+    private static final class Worker extends Thread {
+
+        Worker(Runnable runnable, String name) {
+            super(runnable, name);
+            setDaemon(true);
+        }
+    }
+}
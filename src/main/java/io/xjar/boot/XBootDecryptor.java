@@ -3,6 +3,7 @@ package io.xjar.boot;
 import io.xjar.*;
 import io.xjar.jar.XJarAllEntryFilter;
 import io.xjar.jar.XJarDecryptor;
+import io.xjar.jar.XJarEntryMode;
 import io.xjar.key.XKey;
 import org.apache.commons.compress.archivers.jar.JarArchiveEntry;
 import org.apache.commons.compress.archivers.jar.JarArchiveInputStream;
@@ -11,8 +12,6 @@ import org.apache.commons.compress.archivers.jar.JarArchiveOutputStream;
 import java.io.*;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
-import java.util.zip.CRC32;
-import java.util.zip.CheckedOutputStream;
 import java.util.zip.Deflater;
 
 /**
@@ -62,11 +61,13 @@ public class XBootDecryptor extends XEntryDecryptor<JarArchiveEntry> implements
             XUnclosedInputStream nis = new XUnclosedInputStream(zis);
             XUnclosedOutputStream nos = new XUnclosedOutputStream(zos);
             XJarDecryptor xJarDecryptor = new XJarDecryptor(xDecryptor, level, filter);
+            XMemoryBudget budget = new XMemoryBudget(DEFAULT_MEMORY);
             JarArchiveEntry entry;
             while ((entry = zis.getNextJarEntry()) != null) {
                 if (entry.getName().startsWith(XJAR_SRC_DIR)
                         || entry.getName().endsWith(XJAR_INF_DIR)
                         || entry.getName().endsWith(XJAR_INF_DIR + XJAR_INF_IDX)
+                        || entry.getName().endsWith(XJAR_INF_DIR + XJAR_INF_PROFILE)
                 ) {
                     continue;
                 }
@@ -97,38 +98,32 @@ public class XBootDecryptor extends XEntryDecryptor<JarArchiveEntry> implements
                     zos.putArchiveEntry(jarArchiveEntry);
                     XBootJarArchiveEntry xBootJarArchiveEntry = new XBootJarArchiveEntry(entry);
                     boolean filtered = filtrate(xBootJarArchiveEntry);
-                    XDecryptor decryptor = filtered ? xDecryptor : xNopDecryptor;
+                    XDecryptor decryptor = !filtered ? xNopDecryptor : XJarEntryMode.decryptor(XJarEntryMode.of(entry), xDecryptor);
                     try (OutputStream eos = decryptor.decrypt(key, nos)) {
                         XKit.transfer(nis, eos);
                     }
                 }
                 // BOOT-INF/lib/**
                 else if (entry.getName().startsWith(BOOT_INF_LIB)) {
-                    byte[] data = XKit.read(nis);
-                    ByteArrayInputStream lib = new ByteArrayInputStream(data);
-                    boolean need = xJarDecryptor.predicate(lib);
-                    lib.reset();
-                    if (need) {
-                        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                        CheckedOutputStream cos = new CheckedOutputStream(bos, new CRC32());
-                        xJarDecryptor.decrypt(key, lib, cos);
-                        JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
-                        jarArchiveEntry.setMethod(JarArchiveEntry.STORED);
-                        jarArchiveEntry.setSize(bos.size());
-                        jarArchiveEntry.setTime(entry.getTime());
-                        jarArchiveEntry.setCrc(cos.getChecksum().getValue());
-                        zos.putArchiveEntry(jarArchiveEntry);
-                        ByteArrayInputStream bis = new ByteArrayInputStream(bos.toByteArray());
-                        XKit.transfer(bis, nos);
-                    } else {
-                        JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
-                        jarArchiveEntry.setMethod(JarArchiveEntry.STORED);
-                        jarArchiveEntry.setSize(entry.getSize());
-                        jarArchiveEntry.setTime(entry.getTime());
-                        jarArchiveEntry.setCrc(entry.getCrc());
-                        zos.putArchiveEntry(jarArchiveEntry);
-                        XKit.transfer(lib, nos);
+                    try (XSpillBuffer lib = new XSpillBuffer(budget)) {
+                        XKit.transfer(nis, lib);
+                        boolean need;
+                        try (InputStream bis = lib.openStream()) {
+                            need = xJarDecryptor.predicate(bis);
+                        }
+                        if (need) {
+                            try (
+                                    InputStream bis = lib.openStream();
+                                    XSpillBuffer buffer = new XSpillBuffer(budget)
+                            ) {
+                                xJarDecryptor.decrypt(key, bis, new XUnclosedOutputStream(buffer));
+                                store(entry, buffer, zos);
+                            }
+                        } else {
+                            store(entry, lib, zos);
+                        }
                     }
+                    continue;
                 }
                 // OTHER
                 else {
@@ -147,4 +142,17 @@ public class XBootDecryptor extends XEntryDecryptor<JarArchiveEntry> implements
         }
     }
 
+    /**
+     * 以 STORED 方式写入缓冲区中的数据，大小和CRC在写入缓冲区时已经计算好
+     */
+    private void store(JarArchiveEntry entry, XSpillBuffer buffer, JarArchiveOutputStream zos) throws IOException {
+        JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
+        jarArchiveEntry.setMethod(JarArchiveEntry.STORED);
+        jarArchiveEntry.setSize(buffer.size());
+        jarArchiveEntry.setTime(entry.getTime());
+        jarArchiveEntry.setCrc(buffer.crc());
+        zos.putArchiveEntry(jarArchiveEntry);
+        buffer.writeTo(zos);
+        zos.closeArchiveEntry();
+    }
 }
@@ -3,20 +3,30 @@ package io.xjar.boot;
 import io.xjar.*;
 import io.xjar.jar.XJarAllEntryFilter;
 import io.xjar.jar.XJarEncryptor;
+import io.xjar.jar.XJarEntryMode;
 import io.xjar.key.XKey;
 import org.apache.commons.compress.archivers.jar.JarArchiveEntry;
 import org.apache.commons.compress.archivers.jar.JarArchiveInputStream;
 import org.apache.commons.compress.archivers.jar.JarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.DefaultBackingStoreSupplier;
+import org.apache.commons.compress.archivers.zip.JarMarker;
+import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.parallel.InputStreamSupplier;
 
 import java.io.*;
-import java.util.HashMap;
-import java.util.LinkedHashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
-import java.util.zip.CRC32;
-import java.util.zip.CheckedOutputStream;
 import java.util.zip.Deflater;
 
 /**
@@ -41,6 +51,7 @@ public class XBootEncryptor extends XEntryEncryptor<JarArchiveEntry> implements
     }
 
     private final int level;
+    private final XEncryptOptions options;
 
     public XBootEncryptor(XEncryptor xEncryptor) {
         this(xEncryptor, new XJarAllEntryFilter());
@@ -55,141 +66,753 @@ public class XBootEncryptor extends XEntryEncryptor<JarArchiveEntry> implements
     }
 
     public XBootEncryptor(XEncryptor xEncryptor, int level, XEntryFilter<JarArchiveEntry> filter) {
+        this(xEncryptor, level, filter, new XEncryptOptions());
+    }
+
+    public XBootEncryptor(XEncryptor xEncryptor, XEntryFilter<JarArchiveEntry> filter, XEncryptOptions options) {
+        this(xEncryptor, Deflater.DEFAULT_COMPRESSION, filter, options);
+    }
+
+    public XBootEncryptor(XEncryptor xEncryptor, int level, XEntryFilter<JarArchiveEntry> filter, XEncryptOptions options) {
         super(xEncryptor, filter);
         this.level = level;
+        this.options = options;
     }
 
     @Override
     public void encrypt(XKey key, File src, File dest) throws IOException {
         try (
-                FileInputStream fis = new FileInputStream(src);
+                ZipFile zipFile = ZipFile.builder().setFile(src).get();
                 FileOutputStream fos = new FileOutputStream(dest)
         ) {
-            encrypt(key, fis, fos);
+            encrypt(key, zipFile, fos);
 //            XGo.make(dest, key);
         }
     }
 
-    @Override
-    public void encrypt(XKey key, InputStream in, OutputStream out) throws IOException {
-        JarArchiveInputStream zis = null;
+    /**
+     * 基于随机访问的原文包加密，不需要加密的记录直接拷贝压缩后的原始数据及其CRC和大小，省去解压再压缩的开销。
+     * 指定了 {@link XEncryptOptions#getExecutor()} 时，各个内嵌JAR包的加密会提前并发执行，再按原顺序写入。
+     * 并行加密时见 {@link #encryptInParallel(XKey, ZipFile, JarArchiveOutputStream, List)}。
+     *
+     * @param key     密钥
+     * @param zipFile 原文包
+     * @param out     加密包输出流
+     * @throws IOException I/O 异常
+     */
+    public void encrypt(XKey key, ZipFile zipFile, OutputStream out) throws IOException {
+        options.check(key);
         JarArchiveOutputStream zos = null;
-        Set<String> indexes = new LinkedHashSet<>();
+        List<XIndexEntry> indexes = new ArrayList<>();
+        XMemoryBudget budget = new XMemoryBudget(options.getMemory());
+        Map<ZipArchiveEntry, CompletableFuture<XSpillBuffer>> libs = new IdentityHashMap<>();
         try {
-            zis = new JarArchiveInputStream(in);
             zos = new JarArchiveOutputStream(out);
             zos.setLevel(level);
-            XUnclosedInputStream nis = new XUnclosedInputStream(zis);
+            if (options.isParallel()) {
+                finish(zos, indexes, encryptInParallel(key, zipFile, zos, indexes));
+                return;
+            }
             XUnclosedOutputStream nos = new XUnclosedOutputStream(zos);
-            XJarEncryptor xJarEncryptor = new XJarEncryptor(xEncryptor, level, filter);
-            JarArchiveEntry entry;
+            XJarEncryptor xJarEncryptor = new XJarEncryptor(xEncryptor, level, filter, options);
             Manifest manifest = null;
-            while ((entry = zis.getNextJarEntry()) != null) {
+            List<ZipArchiveEntry> entries = order(Collections.list(zipFile.getEntriesInPhysicalOrder()), ZipArchiveEntry::getName);
+            Executor executor = options.getExecutor();
+            if (executor != null) {
+                for (ZipArchiveEntry entry : entries) {
+                    if (!entry.isDirectory() && entry.getName().startsWith(BOOT_INF_LIB)) {
+                        libs.put(entry, CompletableFuture.supplyAsync(() -> {
+                            try {
+                                return encryptLib(key, zipFile, entry, xJarEncryptor, budget);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }, executor));
+                    }
+                }
+            }
+            for (ZipArchiveEntry entry : entries) {
                 if (entry.getName().startsWith(XJAR_SRC_DIR)
                         || entry.getName().endsWith(XJAR_INF_DIR)
                         || entry.getName().endsWith(XJAR_INF_DIR + XJAR_INF_IDX)
+                        || entry.getName().endsWith(XJAR_INF_DIR + XJAR_INF_PROFILE)
                 ) {
                     continue;
                 }
-                // DIR ENTRY
-                if (entry.isDirectory()) {
-                    JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
-                    jarArchiveEntry.setTime(entry.getTime());
-                    zos.putArchiveEntry(jarArchiveEntry);
-                }
                 // META-INF/MANIFEST.MF
-                else if (entry.getName().equals(META_INF_MANIFEST)) {
-                    manifest = new Manifest(nis);
-                    Attributes attributes = manifest.getMainAttributes();
-                    String mainClass = attributes.getValue("Main-Class");
-                    if (mainClass != null) {
-                        attributes.putValue("Boot-Main-Class", mainClass);
-                        attributes.putValue("Main-Class", map.get(mainClass));
+                if (!entry.isDirectory() && entry.getName().equals(META_INF_MANIFEST)) {
+                    try (InputStream in = zipFile.getInputStream(entry)) {
+                        manifest = manifest(in);
                     }
                     JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
                     jarArchiveEntry.setTime(entry.getTime());
                     zos.putArchiveEntry(jarArchiveEntry);
                     manifest.write(nos);
+                    zos.closeArchiveEntry();
                 }
                 // BOOT-INF/classes/**
-                else if (entry.getName().startsWith(BOOT_INF_CLASSES)) {
+                else if (!entry.isDirectory() && entry.getName().startsWith(BOOT_INF_CLASSES)) {
+                    XBootJarArchiveEntry xBootJarArchiveEntry = new XBootJarArchiveEntry(entry);
+                    if (!filtrate(xBootJarArchiveEntry)) {
+                        copy(zipFile, entry, zos);
+                        continue;
+                    }
+                    String mode = options.mode(entry.getName(), entry.getSize());
+                    XIndexEntry index = options.index(xBootJarArchiveEntry.getName(), mode).plain(entry.getSize(), entry.getCrc());
+                    indexes.add(index);
+                    if (options.getCache() != null) {
+                        try (XSpillBuffer buffer = cached(zipFile, entry, mode == null ? "" : mode, budget, () -> encryptEntry(key, zipFile, entry, mode, budget))) {
+                            index.cipher(buffer.size());
+                            if (mode != null) {
+                                store(entry, mode, buffer, zos);
+                                continue;
+                            }
+                            JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
+                            jarArchiveEntry.setTime(entry.getTime());
+                            zos.putArchiveEntry(jarArchiveEntry);
+                            buffer.writeTo(nos);
+                            zos.closeArchiveEntry();
+                        }
+                        continue;
+                    }
+                    if (mode != null) {
+                        try (InputStream in = zipFile.getInputStream(entry)) {
+                            store(key, entry, index, in, zos, budget);
+                        }
+                        continue;
+                    }
                     JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
                     jarArchiveEntry.setTime(entry.getTime());
                     zos.putArchiveEntry(jarArchiveEntry);
+                    try (
+                            InputStream in = zipFile.getInputStream(entry);
+                            OutputStream eos = xEncryptor.encrypt(key, index.count(nos))
+                    ) {
+                        XKit.transfer(in, eos);
+                    }
+                    zos.closeArchiveEntry();
+                }
+                // BOOT-INF/lib/**
+                else if (!entry.isDirectory() && entry.getName().startsWith(BOOT_INF_LIB)) {
+                    CompletableFuture<XSpillBuffer> future = libs.remove(entry);
+                    try (XSpillBuffer buffer = future != null ? await(future) : encryptLib(key, zipFile, entry, xJarEncryptor, budget)) {
+                        if (buffer == null) {
+                            copy(zipFile, entry, zos);
+                        } else {
+                            store(entry, buffer, zos);
+                        }
+                    }
+                }
+                // DIR ENTRY & OTHER
+                else {
+                    copy(zipFile, entry, zos);
+                }
+            }
+            finish(zos, indexes, manifest);
+        } finally {
+            for (CompletableFuture<XSpillBuffer> future : libs.values()) {
+                future.thenAccept(XKit::close);
+            }
+            XKit.close(zos);
+        }
+    }
+
+    /**
+     * 基于随机访问的并行加密：清单文件和需要加密的 BOOT-INF/classes 记录交给 {@link ParallelScatterZipCreator} 的工作线程加密和压缩，
+     * 汇总到临时文件后再和同一线程池中加密的内嵌JAR包一起按原顺序写入，不需要加密的记录仍然直接拷贝压缩后的原始数据，
+     * 因此生成的记录顺序、索引和清单文件与顺序加密完全一致。
+     */
+    private Manifest encryptInParallel(XKey key, ZipFile zipFile, JarArchiveOutputStream zos, List<XIndexEntry> indexes) throws IOException {
+        XMemoryBudget budget = new XMemoryBudget(options.getMemory());
+        List<XSpillBuffer> buffers = new ArrayList<>();
+        XJarEncryptor xJarEncryptor = new XJarEncryptor(xEncryptor, level, filter, options);
+        ExecutorService executor = Executors.newFixedThreadPool(options.getThreads());
+        ParallelScatterZipCreator creator = new ParallelScatterZipCreator(executor, new DefaultBackingStoreSupplier(null), level);
+        Map<ZipArchiveEntry, CompletableFuture<XSpillBuffer>> libs = new IdentityHashMap<>();
+        Set<String> scattered = new HashSet<>();
+        List<ZipArchiveEntry> entries = new ArrayList<>();
+        Manifest manifest = null;
+        File temp = null;
+        ZipFile scatter = null;
+        try {
+            for (ZipArchiveEntry entry : order(Collections.list(zipFile.getEntriesInPhysicalOrder()), ZipArchiveEntry::getName)) {
+                if (entry.getName().startsWith(XJAR_SRC_DIR)
+                        || entry.getName().endsWith(XJAR_INF_DIR)
+                        || entry.getName().endsWith(XJAR_INF_DIR + XJAR_INF_IDX)
+                        || entry.getName().endsWith(XJAR_INF_DIR + XJAR_INF_PROFILE)
+                ) {
+                    continue;
+                }
+                entries.add(entry);
+                JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
+                jarArchiveEntry.setTime(entry.getTime());
+                jarArchiveEntry.setMethod(JarArchiveEntry.DEFLATED);
+                // META-INF/MANIFEST.MF
+                if (!entry.isDirectory() && entry.getName().equals(META_INF_MANIFEST)) {
+                    try (InputStream in = zipFile.getInputStream(entry)) {
+                        manifest = manifest(in);
+                    }
+                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                    manifest.write(bos);
+                    byte[] data = bos.toByteArray();
+                    creator.addArchiveEntry(jarArchiveEntry, () -> new ByteArrayInputStream(data));
+                    scattered.add(entry.getName());
+                }
+                // BOOT-INF/classes/**
+                else if (!entry.isDirectory() && entry.getName().startsWith(BOOT_INF_CLASSES)) {
                     XBootJarArchiveEntry xBootJarArchiveEntry = new XBootJarArchiveEntry(entry);
-                    boolean filtered = filtrate(xBootJarArchiveEntry);
-                    if (filtered) {
-                        indexes.add(xBootJarArchiveEntry.getName());
+                    if (!filtrate(xBootJarArchiveEntry)) {
+                        continue;
                     }
-                    XEncryptor encryptor = filtered ? xEncryptor : xNopEncryptor;
-                    try (OutputStream eos = encryptor.encrypt(key, nos)) {
-                        XKit.transfer(nis, eos);
+                    String mode = options.mode(entry.getName(), entry.getSize());
+                    XIndexEntry index = options.index(xBootJarArchiveEntry.getName(), mode).plain(entry.getSize(), entry.getCrc());
+                    indexes.add(index);
+                    if (mode != null) {
+                        jarArchiveEntry.setMethod(JarArchiveEntry.STORED);
+                        XJarEntryMode.mark(jarArchiveEntry, mode);
                     }
+                    creator.addArchiveEntry(jarArchiveEntry, () -> {
+                        try {
+                            XSpillBuffer buffer = cached(zipFile, entry, mode == null ? "" : mode, budget, () -> encryptEntry(key, zipFile, entry, mode, budget));
+                            synchronized (buffers) {
+                                buffers.add(buffer);
+                            }
+                            index.cipher(buffer.size());
+                            return buffer.openStream();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                    scattered.add(entry.getName());
                 }
                 // BOOT-INF/lib/**
-                else if (entry.getName().startsWith(BOOT_INF_LIB)) {
-                    byte[] data = XKit.read(nis);
-                    ByteArrayInputStream lib = new ByteArrayInputStream(data);
-                    boolean need = xJarEncryptor.predicate(lib);
-                    lib.reset();
-                    if (need) {
-                        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                        CheckedOutputStream cos = new CheckedOutputStream(bos, new CRC32());
-                        xJarEncryptor.encrypt(key, lib, cos);
-                        JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
-                        jarArchiveEntry.setMethod(JarArchiveEntry.STORED);
-                        jarArchiveEntry.setSize(bos.size());
-                        jarArchiveEntry.setTime(entry.getTime());
-                        jarArchiveEntry.setCrc(cos.getChecksum().getValue());
-                        zos.putArchiveEntry(jarArchiveEntry);
-                        ByteArrayInputStream bis = new ByteArrayInputStream(bos.toByteArray());
-                        XKit.transfer(bis, nos);
-                    } else {
-                        JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
-                        jarArchiveEntry.setMethod(JarArchiveEntry.STORED);
-                        jarArchiveEntry.setSize(entry.getSize());
-                        jarArchiveEntry.setTime(entry.getTime());
-                        jarArchiveEntry.setCrc(entry.getCrc());
-                        zos.putArchiveEntry(jarArchiveEntry);
-                        XKit.transfer(lib, nos);
+                else if (!entry.isDirectory() && entry.getName().startsWith(BOOT_INF_LIB)) {
+                    libs.put(entry, CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return encryptLib(key, zipFile, entry, xJarEncryptor, budget);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }, executor));
+                }
+            }
+            temp = File.createTempFile("xjar-", ".zip");
+            try (ZipArchiveOutputStream tos = new ZipArchiveOutputStream(temp)) {
+                creator.writeTo(tos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            }
+            scatter = ZipFile.builder().setFile(temp).get();
+            for (ZipArchiveEntry entry : entries) {
+                CompletableFuture<XSpillBuffer> future = libs.remove(entry);
+                if (scattered.contains(entry.getName())) {
+                    copy(scatter, scatter.getEntry(entry.getName()), zos);
+                } else if (future != null) {
+                    try (XSpillBuffer buffer = await(future)) {
+                        if (buffer == null) {
+                            copy(zipFile, entry, zos);
+                        } else {
+                            store(entry, buffer, zos);
+                        }
                     }
                 }
-                // OTHER
+                // DIR ENTRY & OTHER
                 else {
-                    JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
-                    jarArchiveEntry.setTime(entry.getTime());
-                    zos.putArchiveEntry(jarArchiveEntry);
-                    XKit.transfer(nis, nos);
+                    copy(zipFile, entry, zos);
                 }
-                zos.closeArchiveEntry();
             }
+            return manifest;
+        } finally {
+            executor.shutdownNow();
+            for (CompletableFuture<XSpillBuffer> future : libs.values()) {
+                future.thenAccept(XKit::close);
+            }
+            synchronized (buffers) {
+                for (XSpillBuffer buffer : buffers) {
+                    XKit.close(buffer);
+                }
+            }
+            XKit.close(scatter);
+            if (temp != null && !temp.delete()) {
+                temp.deleteOnExit();
+            }
+        }
+    }
 
-            if (!indexes.isEmpty()) {
-                JarArchiveEntry xjarInfDir = new JarArchiveEntry(BOOT_INF_CLASSES + XJAR_INF_DIR);
-                xjarInfDir.setTime(System.currentTimeMillis());
-                zos.putArchiveEntry(xjarInfDir);
-                zos.closeArchiveEntry();
-
-                JarArchiveEntry xjarInfIdx = new JarArchiveEntry(BOOT_INF_CLASSES + XJAR_INF_DIR + XJAR_INF_IDX);
-                xjarInfIdx.setTime(System.currentTimeMillis());
-                zos.putArchiveEntry(xjarInfIdx);
-                for (String index : indexes) {
-                    zos.write(index.getBytes());
-                    zos.write(CRLF.getBytes());
+    /**
+     * 加密内嵌JAR包
+     *
+     * @return 加密后的内嵌JAR包，不需要加密时返回 {@code null}
+     */
+    private XSpillBuffer encryptLib(XKey key, ZipFile zipFile, ZipArchiveEntry entry, XJarEncryptor xJarEncryptor, XMemoryBudget budget) throws IOException {
+        return cached(zipFile, entry, BOOT_INF_LIB, budget, () -> {
+            try (InputStream in = zipFile.getInputStream(entry)) {
+                if (!xJarEncryptor.predicate(in)) {
+                    return null;
                 }
-                zos.closeArchiveEntry();
             }
+            XSpillBuffer buffer = new XSpillBuffer(budget);
+            try (InputStream in = zipFile.getInputStream(entry)) {
+                xJarEncryptor.encrypt(key, in, new XUnclosedOutputStream(buffer), budget);
+                return buffer;
+            } catch (IOException | RuntimeException e) {
+                XKit.close(buffer);
+                throw e;
+            }
+        });
+    }
 
-            String mainClass = manifest != null && manifest.getMainAttributes() != null ? manifest.getMainAttributes().getValue("Main-Class") : null;
-            if (mainClass != null) {
-                XInjector.inject(zos);
+    /**
+     * 加密 BOOT-INF/classes 下的记录到缓冲区
+     */
+    private XSpillBuffer encryptEntry(XKey key, ZipFile zipFile, ZipArchiveEntry entry, String mode, XMemoryBudget budget) throws IOException {
+        XEncryptor encryptor = XJarEntryMode.encryptor(mode, xEncryptor, level);
+        XSpillBuffer buffer = new XSpillBuffer(budget);
+        try (InputStream in = zipFile.getInputStream(entry)) {
+            encryptor.encrypt(key, in, buffer);
+            return buffer;
+        } catch (IOException | RuntimeException e) {
+            XKit.close(buffer);
+            throw e;
+        }
+    }
+
+    /**
+     * 优先从增量加密缓存中取出加密结果，未命中时加密并放入缓存
+     *
+     * @param kind 加密方式，BOOT-INF/classes 下的记录为加密模式，内嵌JAR包为 {@code BOOT-INF/lib/}
+     * @return 加密结果，不需要加密时返回 {@code null}
+     */
+    private XSpillBuffer cached(ZipFile zipFile, ZipArchiveEntry entry, String kind, XMemoryBudget budget, XBufferSupplier supplier) throws IOException {
+        XEncryptCache cache = options.getCache();
+        if (cache == null) {
+            return supplier.get();
+        }
+        String hash = cache.hash(zipFile, entry, kind);
+        XEncryptCache.Entry cached = cache.get(hash);
+        if (cached != null) {
+            if (cached.isPlain()) {
+                return null;
             }
+            XSpillBuffer buffer = new XSpillBuffer(budget);
+            try (InputStream in = cached.openStream()) {
+                XKit.transfer(in, buffer);
+                return buffer;
+            } catch (IOException | RuntimeException e) {
+                XKit.close(buffer);
+                throw e;
+            }
+        }
+        XSpillBuffer buffer = supplier.get();
+        if (buffer == null) {
+            cache.putPlain(hash);
+        } else {
+            cache.put(hash, buffer);
+        }
+        return buffer;
+    }
+
+    private interface XBufferSupplier {
 
-            zos.finish();
+        XSpillBuffer get() throws IOException;
+    }
+
+    /**
+     * 等待内嵌JAR包加密完成
+     */
+    private static XSpillBuffer await(CompletableFuture<XSpillBuffer> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    /**
+     * 按指定的加密模式加密并以 STORED 方式写入记录：先压缩后加密的记录省去对密文的无效压缩，运行时也不再需要先解压密文；
+     * 可跳转的记录在运行时可以直接定位到任意位置；分块的记录在构建和运行时都并行加/解密。
+     */
+    private void store(XKey key, ZipArchiveEntry entry, XIndexEntry index, InputStream in, JarArchiveOutputStream zos, XMemoryBudget budget) throws IOException {
+        try (XSpillBuffer buffer = new XSpillBuffer(budget)) {
+            XJarEntryMode.encryptor(index.getMode(), xEncryptor, level).encrypt(key, in, buffer);
+            index.cipher(buffer.size());
+            store(entry, index.getMode(), buffer, zos);
+        }
+    }
+
+    /**
+     * 以 STORED 方式写入缓冲区中的数据，大小和CRC在写入缓冲区时已经计算好
+     */
+    private void store(ZipArchiveEntry entry, XSpillBuffer buffer, JarArchiveOutputStream zos) throws IOException {
+        store(entry, null, buffer, zos);
+    }
+
+    /**
+     * 以 STORED 方式写入缓冲区中的数据并标记其加密模式
+     */
+    private void store(ZipArchiveEntry entry, String mode, XSpillBuffer buffer, JarArchiveOutputStream zos) throws IOException {
+        JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
+        jarArchiveEntry.setMethod(JarArchiveEntry.STORED);
+        XJarEntryMode.mark(jarArchiveEntry, mode);
+        jarArchiveEntry.setSize(buffer.size());
+        jarArchiveEntry.setTime(entry.getTime());
+        jarArchiveEntry.setCrc(buffer.crc());
+        zos.putArchiveEntry(jarArchiveEntry);
+        buffer.writeTo(zos);
+        zos.closeArchiveEntry();
+    }
+
+    /**
+     * 原样拷贝记录压缩后的数据
+     */
+    private void copy(ZipFile zipFile, ZipArchiveEntry entry, JarArchiveOutputStream zos) throws IOException {
+        try (InputStream raw = zipFile.getRawInputStream(entry)) {
+            zos.addRawArchiveEntry(entry, raw);
+        }
+    }
+
+    @Override
+    public void encrypt(XKey key, InputStream in, OutputStream out) throws IOException {
+        options.check(key);
+        JarArchiveInputStream zis = null;
+        JarArchiveOutputStream zos = null;
+        List<XIndexEntry> indexes = new ArrayList<>();
+        try {
+            zis = new JarArchiveInputStream(in);
+            zos = new JarArchiveOutputStream(out);
+            zos.setLevel(level);
+            Manifest manifest = options.isParallel()
+                    ? encryptInParallel(key, zis, zos, indexes)
+                    : encryptInSequence(key, zis, zos, indexes);
+
+            finish(zos, indexes, manifest);
         } finally {
             XKit.close(zis);
             XKit.close(zos);
         }
     }
 
+    private Manifest encryptInSequence(XKey key, JarArchiveInputStream zis, JarArchiveOutputStream zos, List<XIndexEntry> indexes) throws IOException {
+        XMemoryBudget budget = new XMemoryBudget(options.getMemory());
+        XUnclosedInputStream nis = new XUnclosedInputStream(zis);
+        XUnclosedOutputStream nos = new XUnclosedOutputStream(zos);
+        XJarEncryptor xJarEncryptor = new XJarEncryptor(xEncryptor, level, filter, options);
+        JarArchiveEntry entry;
+        Manifest manifest = null;
+        while ((entry = zis.getNextEntry()) != null) {
+            if (entry.getName().startsWith(XJAR_SRC_DIR)
+                    || entry.getName().endsWith(XJAR_INF_DIR)
+                    || entry.getName().endsWith(XJAR_INF_DIR + XJAR_INF_IDX)
+                    || entry.getName().endsWith(XJAR_INF_DIR + XJAR_INF_PROFILE)
+            ) {
+                continue;
+            }
+            // DIR ENTRY
+            if (entry.isDirectory()) {
+                JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
+                jarArchiveEntry.setTime(entry.getTime());
+                zos.putArchiveEntry(jarArchiveEntry);
+            }
+            // META-INF/MANIFEST.MF
+            else if (entry.getName().equals(META_INF_MANIFEST)) {
+                manifest = manifest(nis);
+                JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
+                jarArchiveEntry.setTime(entry.getTime());
+                zos.putArchiveEntry(jarArchiveEntry);
+                manifest.write(nos);
+            }
+            // BOOT-INF/classes/**
+            else if (entry.getName().startsWith(BOOT_INF_CLASSES)) {
+                XBootJarArchiveEntry xBootJarArchiveEntry = new XBootJarArchiveEntry(entry);
+                boolean filtered = filtrate(xBootJarArchiveEntry);
+                String mode = filtered ? options.mode(entry.getName(), entry.getSize()) : null;
+                XIndexEntry index = filtered ? options.index(xBootJarArchiveEntry.getName(), mode) : null;
+                if (filtered) {
+                    indexes.add(index);
+                }
+                InputStream in = filtered ? index.measure(nis) : nis;
+                if (mode != null) {
+                    store(key, entry, index, in, zos, budget);
+                    continue;
+                }
+                JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
+                jarArchiveEntry.setTime(entry.getTime());
+                zos.putArchiveEntry(jarArchiveEntry);
+                XEncryptor encryptor = filtered ? xEncryptor : xNopEncryptor;
+                try (OutputStream eos = encryptor.encrypt(key, filtered ? index.count(nos) : nos)) {
+                    XKit.transfer(in, eos);
+                }
+            }
+            // BOOT-INF/lib/**
+            else if (entry.getName().startsWith(BOOT_INF_LIB)) {
+                try (XSpillBuffer lib = new XSpillBuffer(budget)) {
+                    XKit.transfer(nis, lib);
+                    boolean need;
+                    try (InputStream in = lib.openStream()) {
+                        need = xJarEncryptor.predicate(in);
+                    }
+                    if (need) {
+                        try (
+                                InputStream in = lib.openStream();
+                                XSpillBuffer buffer = new XSpillBuffer(budget)
+                        ) {
+                            xJarEncryptor.encrypt(key, in, new XUnclosedOutputStream(buffer), budget);
+                            store(entry, buffer, zos);
+                        }
+                    } else {
+                        store(entry, lib, zos);
+                    }
+                }
+                continue;
+            }
+            // OTHER
+            else {
+                JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
+                jarArchiveEntry.setTime(entry.getTime());
+                zos.putArchiveEntry(jarArchiveEntry);
+                XKit.transfer(nis, nos);
+            }
+            zos.closeArchiveEntry();
+        }
+        return manifest;
+    }
+
+    /**
+     * 并行加密：按原顺序读取每个记录，把加密和压缩交给 {@link ParallelScatterZipCreator} 的工作线程，
+     * 最后再按添加的顺序汇总写入输出流，因此生成的记录顺序、索引和清单文件与顺序加密完全一致。
+     */
+    private Manifest encryptInParallel(XKey key, JarArchiveInputStream zis, JarArchiveOutputStream zos, List<XIndexEntry> indexes) throws IOException {
+        XMemoryBudget budget = new XMemoryBudget(options.getMemory());
+        List<XSpillBuffer> buffers = new ArrayList<>();
+        XUnclosedInputStream nis = new XUnclosedInputStream(zis);
+        XJarEncryptor xJarEncryptor = new XJarEncryptor(xEncryptor, level, filter, options);
+        ExecutorService executor = Executors.newFixedThreadPool(options.getThreads());
+        ParallelScatterZipCreator creator = new ParallelScatterZipCreator(executor, new DefaultBackingStoreSupplier(null), level);
+        List<JarArchiveEntry> entries = new ArrayList<>();
+        Map<JarArchiveEntry, InputStreamSupplier> suppliers = new IdentityHashMap<>();
+        JarArchiveEntry entry;
+        Manifest manifest = null;
+        while ((entry = zis.getNextEntry()) != null) {
+            if (entry.getName().startsWith(XJAR_SRC_DIR)
+                    || entry.getName().endsWith(XJAR_INF_DIR)
+                    || entry.getName().endsWith(XJAR_INF_DIR + XJAR_INF_IDX)
+                    || entry.getName().endsWith(XJAR_INF_DIR + XJAR_INF_PROFILE)
+            ) {
+                continue;
+            }
+            JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
+            jarArchiveEntry.setTime(entry.getTime());
+            jarArchiveEntry.setMethod(JarArchiveEntry.DEFLATED);
+            InputStreamSupplier supplier;
+            // DIR ENTRY
+            if (entry.isDirectory()) {
+                supplier = () -> new ByteArrayInputStream(new byte[0]);
+            }
+            // META-INF/MANIFEST.MF
+            else if (entry.getName().equals(META_INF_MANIFEST)) {
+                manifest = manifest(nis);
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                manifest.write(bos);
+                byte[] data = bos.toByteArray();
+                supplier = () -> new ByteArrayInputStream(data);
+            }
+            // BOOT-INF/classes/**
+            else if (entry.getName().startsWith(BOOT_INF_CLASSES)) {
+                XBootJarArchiveEntry xBootJarArchiveEntry = new XBootJarArchiveEntry(entry);
+                boolean filtered = filtrate(xBootJarArchiveEntry);
+                XSpillBuffer data = new XSpillBuffer(budget);
+                buffers.add(data);
+                XKit.transfer(nis, data);
+                String mode = filtered ? options.mode(entry.getName(), data.size()) : null;
+                XIndexEntry index = filtered ? options.index(xBootJarArchiveEntry.getName(), mode) : null;
+                if (filtered) {
+                    indexes.add(index.plain(data.size(), data.crc()));
+                }
+                if (mode != null) {
+                    jarArchiveEntry.setMethod(JarArchiveEntry.STORED);
+                    XJarEntryMode.mark(jarArchiveEntry, mode);
+                }
+                XEncryptor encryptor = !filtered ? xNopEncryptor : XJarEntryMode.encryptor(mode, xEncryptor, level);
+                supplier = () -> {
+                    try {
+                        if (index == null) {
+                            return data.openStream();
+                        }
+                        XSpillBuffer buffer = new XSpillBuffer(budget);
+                        synchronized (buffers) {
+                            buffers.add(buffer);
+                        }
+                        try (InputStream in = data.openStream()) {
+                            encryptor.encrypt(key, in, buffer);
+                        }
+                        data.close();
+                        index.cipher(buffer.size());
+                        return buffer.openStream();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                };
+            }
+            // BOOT-INF/lib/**
+            else if (entry.getName().startsWith(BOOT_INF_LIB)) {
+                jarArchiveEntry.setMethod(JarArchiveEntry.STORED);
+                XSpillBuffer lib = new XSpillBuffer(budget);
+                buffers.add(lib);
+                XKit.transfer(nis, lib);
+                supplier = () -> {
+                    try {
+                        try (InputStream in = lib.openStream()) {
+                            if (!xJarEncryptor.predicate(in)) {
+                                return lib.openStream();
+                            }
+                        }
+                        XSpillBuffer buffer = new XSpillBuffer(budget);
+                        synchronized (buffers) {
+                            buffers.add(buffer);
+                        }
+                        try (InputStream in = lib.openStream()) {
+                            xJarEncryptor.encrypt(key, in, new XUnclosedOutputStream(buffer), budget);
+                        }
+                        return buffer.openStream();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                };
+            }
+            // OTHER
+            else {
+                XSpillBuffer data = new XSpillBuffer(budget);
+                buffers.add(data);
+                XKit.transfer(nis, data);
+                supplier = () -> {
+                    try {
+                        return data.openStream();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                };
+            }
+            entries.add(jarArchiveEntry);
+            suppliers.put(jarArchiveEntry, supplier);
+        }
+        entries = order(entries, JarArchiveEntry::getName);
+        if (!entries.isEmpty()) {
+            entries.get(0).addAsFirstExtraField(JarMarker.getInstance());
+        }
+        for (JarArchiveEntry jarArchiveEntry : entries) {
+            creator.addArchiveEntry(jarArchiveEntry, suppliers.get(jarArchiveEntry));
+        }
+        try {
+            creator.writeTo(zos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } finally {
+            executor.shutdownNow();
+            synchronized (buffers) {
+                for (XSpillBuffer buffer : buffers) {
+                    XKit.close(buffer);
+                }
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * 按 {@link XEncryptOptions#getProfile()} 记录的启动顺序重排 BOOT-INF/classes 下的记录：记录中出现的资源按记录的顺序
+     * 集中写在 BOOT-INF/classes 下第一个资源原来的位置，其余记录保持原来的相对顺序。没有指定启动顺序时原样返回。
+     *
+     * @param entries 原顺序的记录
+     * @param name    取记录名称的函数
+     * @return 重排后的记录
+     */
+    private <E> List<E> order(List<E> entries, Function<E, String> name) {
+        List<String> profile = options.getProfile();
+        if (profile == null || profile.isEmpty()) {
+            return entries;
+        }
+        Map<String, Integer> ranks = new HashMap<>();
+        for (String path : profile) {
+            ranks.putIfAbsent(BOOT_INF_CLASSES + path, ranks.size());
+        }
+        List<E> profiled = new ArrayList<>();
+        for (E entry : entries) {
+            if (ranks.containsKey(name.apply(entry))) {
+                profiled.add(entry);
+            }
+        }
+        if (profiled.isEmpty()) {
+            return entries;
+        }
+        profiled.sort(Comparator.comparingInt(entry -> ranks.get(name.apply(entry))));
+        List<E> ordered = new ArrayList<>(entries.size());
+        for (E entry : entries) {
+            String path = name.apply(entry);
+            if (!profiled.isEmpty() && path.startsWith(BOOT_INF_CLASSES) && !path.endsWith("/")) {
+                ordered.addAll(profiled);
+                profiled.clear();
+            }
+            if (!ranks.containsKey(path)) {
+                ordered.add(entry);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * 写入加密索引和启动顺序记录并注入 XJar 的启动器
+     */
+    private void finish(JarArchiveOutputStream zos, List<XIndexEntry> indexes, Manifest manifest) throws IOException {
+        if (!indexes.isEmpty()) {
+            JarArchiveEntry xjarInfDir = new JarArchiveEntry(BOOT_INF_CLASSES + XJAR_INF_DIR);
+            xjarInfDir.setTime(System.currentTimeMillis());
+            zos.putArchiveEntry(xjarInfDir);
+            zos.closeArchiveEntry();
+
+            JarArchiveEntry xjarInfIdx = new JarArchiveEntry(BOOT_INF_CLASSES + XJAR_INF_DIR + XJAR_INF_IDX);
+            xjarInfIdx.setTime(System.currentTimeMillis());
+            zos.putArchiveEntry(xjarInfIdx);
+            zos.write(XIndexTable.write(indexes));
+            zos.closeArchiveEntry();
+
+            List<String> profile = options.getProfile();
+            if (profile != null && !profile.isEmpty()) {
+                JarArchiveEntry xjarInfProfile = new JarArchiveEntry(BOOT_INF_CLASSES + XJAR_INF_DIR + XJAR_INF_PROFILE);
+                xjarInfProfile.setTime(System.currentTimeMillis());
+                zos.putArchiveEntry(xjarInfProfile);
+                XBootProfile.write(profile, new XUnclosedOutputStream(zos));
+                zos.closeArchiveEntry();
+            }
+        }
+
+        String mainClass = manifest != null && manifest.getMainAttributes() != null ? manifest.getMainAttributes().getValue("Main-Class") : null;
+        if (mainClass != null) {
+            XInjector.inject(zos);
+        }
+
+        zos.finish();
+    }
+
+    /**
+     * 读取清单文件并把启动类替换成 XJar 的启动器
+     */
+    private Manifest manifest(InputStream in) throws IOException {
+        Manifest manifest = new Manifest(in);
+        Attributes attributes = manifest.getMainAttributes();
+        String mainClass = attributes.getValue("Main-Class");
+        if (mainClass != null) {
+            attributes.putValue("Boot-Main-Class", mainClass);
+            attributes.putValue("Main-Class", map.get(mainClass));
+        }
+        return manifest;
+    }
+
 }
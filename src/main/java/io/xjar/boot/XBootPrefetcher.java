@@ -0,0 +1,185 @@
+package io.xjar.boot;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按启动顺序记录预解密：后台低优先级线程沿着记录的类加载顺序，最多领先主线程 {@code window} 个类解密并放入
+ * {@link XBootClassCache}，{@link XBootClassLoader#findClass(String)} 通常可以直接取出已解密的字节码。
+ * 主线程每取出一个记录中的类就推进进度，落后进度一个窗口以上仍未被取出的预解密结果视为浪费并从缓存中移除。
+ *
+ * @author kongweiguang
+ */
+public class XBootPrefetcher implements Runnable {
+    private final List<String> order;
+    private final Map<String, Integer> positions;
+    private final int window;
+    private final XBootClassCache cache;
+    private final Loader loader;
+    private final Queue<Pending> pending = new ArrayDeque<>();
+    private final AtomicLong prefetched = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong wasted = new AtomicLong();
+    private int cursor = -1;
+
+    /**
+     * @param order  按加载顺序排列的类资源路径，如 org/example/App.class
+     * @param window 领先主线程的类数
+     * @param cache  预解密结果的缓存
+     * @param loader 解密类的方法
+     */
+    public XBootPrefetcher(List<String> order, int window, XBootClassCache cache, Loader loader) {
+        this.order = order;
+        this.positions = new HashMap<>();
+        for (int i = 0; i < order.size(); i++) {
+            positions.putIfAbsent(order.get(i), i);
+        }
+        this.window = Math.max(window, 1);
+        this.cache = cache;
+        this.loader = loader;
+    }
+
+    /**
+     * 启动后台预解密线程
+     *
+     * @return 预解密线程
+     */
+    public Thread start() {
+        Thread thread = new Thread(this, "xjar-prefetch");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        return thread;
+    }
+
+    @Override
+    public void run() {
+        for (int i = 0; i < order.size(); i++) {
+            synchronized (this) {
+                try {
+                    while (i > cursor + window || cache.isFull() && purge(cursor)) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (i <= cursor) {
+                    continue;
+                }
+            }
+            String path = order.get(i);
+            String name = path.substring(0, path.length() - ".class".length()).replace('/', '.');
+            try {
+                XBootClassCache.Entry entry = loader.load(name, path);
+                if (entry != null && cache.put(name, entry.getBytes(), entry.getCodeSource())) {
+                    prefetched.incrementAndGet();
+                    synchronized (this) {
+                        pending.add(new Pending(i, name));
+                    }
+                }
+            } catch (Throwable ignored) {
+                // 预解密失败时交由 findClass 按需加载并报告异常
+            }
+        }
+    }
+
+    /**
+     * 主线程加载了一个类，推进进度并统计命中
+     *
+     * @param path 类资源路径
+     * @param hit  是否从缓存中取出了预解密结果
+     */
+    public void consumed(String path, boolean hit) {
+        Integer position = positions.get(path);
+        if (position == null) {
+            return;
+        }
+        (hit ? hits : misses).incrementAndGet();
+        synchronized (this) {
+            if (position > cursor) {
+                cursor = position;
+                purge(cursor - window);
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 移除落后于 {@code position} 仍未被取出的预解密结果，调用方持有锁
+     *
+     * @return 缓存仍然是满的: {@code true} 否则: {@code false}
+     */
+    private boolean purge(int position) {
+        while (!pending.isEmpty() && pending.peek().position < position) {
+            if (cache.take(pending.poll().name) != null) {
+                wasted.incrementAndGet();
+            }
+        }
+        return cache.isFull();
+    }
+
+    /**
+     * @return 预解密的类数
+     */
+    public long getPrefetched() {
+        return prefetched.get();
+    }
+
+    /**
+     * @return 记录中的类从缓存中取出预解密结果的次数
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return 记录中的类没有预解密结果而由主线程解密的次数
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return 预解密后没有被取出就被移除的次数
+     */
+    public long getWasted() {
+        return wasted.get();
+    }
+
+    @Override
+    public String toString() {
+        return "prefetched=" + prefetched + ", hits=" + hits + ", misses=" + misses + ", wasted=" + wasted;
+    }
+
+    private static final class Pending {
+        private final int position;
+        private final String name;
+
+        Pending(int position, String name) {
+            this.position = position;
+            this.name = name;
+        }
+    }
+
+    /**
+     * 解密类的方法
+     */
+    public interface Loader {
+
+        /**
+         * 读取并解密类
+         *
+         * @param name 类名
+         * @param path 类资源路径
+         * @return 解密后的类字节码，该类已经被加载或没有被加密时返回 {@code null}
+         * @throws Exception 读取或解密失败
+         */
+        XBootClassCache.Entry load(String name, String path) throws Exception;
+    }
+}
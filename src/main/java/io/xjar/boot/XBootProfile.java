@@ -0,0 +1,111 @@
+package io.xjar.boot;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 启动顺序记录：训练运行时记录类加载器第一次加载各个类和资源的顺序，加密时据此重排 BOOT-INF/classes 下的记录，
+ * 使冷启动时对加密包的读取接近顺序读取。记录文件每行一个资源名称，如 org/example/App.class，以 # 开头的行为注释。
+ *
+ * @author kongweiguang
+ */
+public class XBootProfile {
+    private final Set<String> recorded = ConcurrentHashMap.newKeySet();
+    private final Queue<String> order = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 记录资源的加载，同一个资源只记录第一次
+     *
+     * @param name 资源名称，如 org/example/App.class
+     */
+    public void record(String name) {
+        if (recorded.add(name)) {
+            order.add(name);
+        }
+    }
+
+    /**
+     * @return 已记录的资源数量
+     */
+    public int size() {
+        return recorded.size();
+    }
+
+    /**
+     * 按加载顺序写入记录文件
+     *
+     * @param file 记录文件
+     * @throws IOException I/O 异常
+     */
+    public void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("could not make directory: " + parent);
+        }
+        Files.write(file.toPath(), new ArrayList<>(order), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 读取记录文件
+     *
+     * @param file 记录文件
+     * @return 按加载顺序排列的资源名称
+     * @throws IOException I/O 异常
+     */
+    public static List<String> read(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * 读取记录
+     *
+     * @param in 记录输入流，不会被关闭
+     * @return 按加载顺序排列的资源名称
+     * @throws IOException I/O 异常
+     */
+    public static List<String> read(InputStream in) throws IOException {
+        List<String> names = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String name = line.trim();
+            if (!name.isEmpty() && !name.startsWith("#")) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 按加载顺序写入记录
+     *
+     * @param names 按加载顺序排列的资源名称
+     * @param out   记录输出流，不会被关闭
+     * @throws IOException I/O 异常
+     */
+    public static void write(List<String> names, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        for (String name : names) {
+            writer.write(name);
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+}
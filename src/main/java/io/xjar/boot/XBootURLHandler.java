@@ -3,19 +3,18 @@ package io.xjar.boot;
 import io.xjar.XConstants;
 import io.xjar.XDecryptor;
 import io.xjar.XEncryptor;
+import io.xjar.XEntryIndex;
+import io.xjar.XIndexEntry;
+import io.xjar.XResourceCache;
+import io.xjar.jar.XJarEntryMode;
 import io.xjar.key.XKey;
 import org.springframework.boot.loader.net.protocol.jar.Handler;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.LineNumberReader;
 import java.net.JarURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
-import java.util.Enumeration;
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.zip.Deflater;
 
 /**
  * 加密的URL处理器
@@ -27,33 +26,49 @@ public class XBootURLHandler extends Handler implements XConstants {
     private final XDecryptor xDecryptor;
     private final XEncryptor xEncryptor;
     private final XKey xKey;
-    private final Set<String> indexes;
+    private final XEntryIndex xEntryIndex;
+    private volatile XResourceCache xResourceCache;
 
     public XBootURLHandler(XDecryptor xDecryptor, XEncryptor xEncryptor, XKey xKey, ClassLoader classLoader) throws Exception {
+        this(xDecryptor, xEncryptor, xKey, new XEntryIndex(classLoader));
+    }
+
+    public XBootURLHandler(XDecryptor xDecryptor, XEncryptor xEncryptor, XKey xKey, XEntryIndex xEntryIndex) {
         this.xDecryptor = xDecryptor;
         this.xEncryptor = xEncryptor;
         this.xKey = xKey;
-        this.indexes = new LinkedHashSet<>();
-        Enumeration<URL> resources = classLoader.getResources(XJAR_INF_DIR + XJAR_INF_IDX);
-        while (resources.hasMoreElements()) {
-            URL resource = resources.nextElement();
-            String url = resource.toString();
-            String classpath = url.substring(0, url.lastIndexOf("!/") + 2);
-            InputStream in = resource.openStream();
-            InputStreamReader isr = new InputStreamReader(in);
-            LineNumberReader lnr = new LineNumberReader(isr);
-            String name;
-            while ((name = lnr.readLine()) != null) indexes.add(classpath + name);
-        }
+        this.xEntryIndex = xEntryIndex;
     }
 
     @Override
     protected URLConnection openConnection(URL url) throws IOException {
         URLConnection urlConnection = super.openConnection(url);
-        return indexes.toString().contains(url.toString())
-               && urlConnection instanceof JarURLConnection
-                ? new XBootURLConnection((JarURLConnection) urlConnection, xDecryptor, xEncryptor, xKey)
-                : urlConnection;
+        XIndexEntry entry = xEntryIndex.get(url);
+        if (entry == null || !(urlConnection instanceof JarURLConnection)) {
+            return urlConnection;
+        }
+        JarURLConnection jarURLConnection = (JarURLConnection) urlConnection;
+        String mode = entry.getMode();
+        XDecryptor decryptor = XJarEntryMode.decryptor(mode, xDecryptor);
+        XEncryptor encryptor = XJarEntryMode.encryptor(mode, xEncryptor, Deflater.DEFAULT_COMPRESSION);
+        XResourceCache cache = !XJarEntryMode.isPartial(mode) && xResourceCache != null && xResourceCache.accepts(entry.getName()) ? xResourceCache : null;
+        return new XBootURLConnection(jarURLConnection, decryptor, encryptor, xKey, entry.getSize(), cache);
+    }
+
+    /**
+     * 指定解密后的资源内容缓存，只缓存默认模式和先压缩后加密的资源，可跳转和分块加密的资源本身就支持部分读取，不缓存。
+     *
+     * @param xResourceCache 解密后的资源内容缓存，为 {@code null} 时不缓存
+     */
+    public void cache(XResourceCache xResourceCache) {
+        this.xResourceCache = xResourceCache;
+    }
+
+    /**
+     * @return 解密后的资源内容缓存，没有指定时返回 {@code null}
+     */
+    public XResourceCache getResourceCache() {
+        return xResourceCache;
     }
 
 }
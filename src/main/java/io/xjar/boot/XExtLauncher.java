@@ -3,6 +3,7 @@ package io.xjar.boot;
 import io.xjar.XLauncher;
 import org.springframework.boot.loader.launch.PropertiesLauncher;
 
+import java.io.File;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.Collection;
@@ -32,6 +33,18 @@ public class XExtLauncher extends PropertiesLauncher {
     protected ClassLoader createClassLoader(Collection<URL> archives) throws Exception {
         URLClassLoader classLoader = (URLClassLoader) super.createClassLoader(archives);
         URL[] urls = classLoader.getURLs();
-        return new XBootClassLoader(urls, this.getClass().getClassLoader(), xLauncher.xDecryptor, xLauncher.xEncryptor, xLauncher.xKey);
+        XBootClassLoader xBootClassLoader = new XBootClassLoader(urls, this.getClass().getClassLoader(), xLauncher.xDecryptor, xLauncher.xEncryptor, xLauncher.xKey);
+        xBootClassLoader.mmap(xLauncher.mmap);
+        xBootClassLoader.decrypt(xLauncher.decryptThreads);
+        if (xLauncher.prefetch) {
+            xBootClassLoader.prefetch(xLauncher.prefetchWindow, xLauncher.prefetchCapacity);
+        } else if (xLauncher.warmup) {
+            xBootClassLoader.warmup(xLauncher.warmupThreads, xLauncher.warmupCapacity);
+        }
+        xBootClassLoader.cache(xLauncher.resourceCache());
+        if (xLauncher.profile != null) {
+            xBootClassLoader.record(new File(xLauncher.profile));
+        }
+        return xBootClassLoader;
     }
 }
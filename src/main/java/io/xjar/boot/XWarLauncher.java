@@ -3,6 +3,7 @@ package io.xjar.boot;
 import io.xjar.XLauncher;
 import org.springframework.boot.loader.launch.WarLauncher;
 
+import java.io.File;
 import java.net.URL;
 import java.util.Collection;
 
@@ -29,7 +30,19 @@ public class XWarLauncher extends WarLauncher {
 
     @Override
     protected ClassLoader createClassLoader(Collection<URL> urls) throws Exception {
-        return new XBootClassLoader(urls.toArray(new URL[]{}), this.getClass().getClassLoader(), xLauncher.xDecryptor, xLauncher.xEncryptor, xLauncher.xKey);
+        XBootClassLoader classLoader = new XBootClassLoader(urls.toArray(new URL[]{}), this.getClass().getClassLoader(), xLauncher.xDecryptor, xLauncher.xEncryptor, xLauncher.xKey);
+        classLoader.mmap(xLauncher.mmap);
+        classLoader.decrypt(xLauncher.decryptThreads);
+        if (xLauncher.prefetch) {
+            classLoader.prefetch(xLauncher.prefetchWindow, xLauncher.prefetchCapacity);
+        } else if (xLauncher.warmup) {
+            classLoader.warmup(xLauncher.warmupThreads, xLauncher.warmupCapacity);
+        }
+        classLoader.cache(xLauncher.resourceCache());
+        if (xLauncher.profile != null) {
+            classLoader.record(new File(xLauncher.profile));
+        }
+        return classLoader;
     }
 
 }
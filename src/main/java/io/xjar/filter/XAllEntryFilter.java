@@ -3,6 +3,7 @@ package io.xjar.filter;
 import io.xjar.XEntryFilter;
 
 import java.util.Collection;
+import java.util.List;
 
 /**
  * ALL逻辑混合过滤器，即所有过滤器都满足的时候才满足，只要有一个过滤器不满足就立刻返回不满足，如果没有过滤器的时候则认为所有过滤器都满足。
@@ -28,8 +29,8 @@ public class XAllEntryFilter<E> extends XMixEntryFilter<E> implements XEntryFilt
 
     @Override
     public boolean filtrate(E entry) {
-        XEntryFilter[] filters = this.filters.toArray(new XEntryFilter[0]);
-        for (XEntryFilter filter : filters) {
+        List<XEntryFilter<E>> filters = this.snapshot;
+        for (XEntryFilter<E> filter : filters) {
             if (!filter.filtrate(entry)) {
                 return false;
             }
@@ -11,8 +11,15 @@ import io.xjar.XEntryFilter;
 public abstract class XAntEntryFilter<E> extends XRegexEntryFilter<E> implements XEntryFilter<E> {
     private static final String[] SYMBOLS = {"\\", "$", "(", ")", "+", ".", "[", "]", "^", "{", "}", "|"};
 
+    protected final String ant;
+
     protected XAntEntryFilter(String ant) {
         super(convert(ant));
+        this.ant = ant;
+    }
+
+    public String getAnt() {
+        return ant;
     }
 
     /**
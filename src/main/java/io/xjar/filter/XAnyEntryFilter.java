@@ -3,6 +3,7 @@ package io.xjar.filter;
 import io.xjar.XEntryFilter;
 
 import java.util.Collection;
+import java.util.List;
 
 /**
  * ANY逻辑混合过滤器，即任意一个过滤器满足时就满足，当没有过滤器的时候则认为没有过滤器满足，也就是不满足。
@@ -28,8 +29,8 @@ public class XAnyEntryFilter<E> extends XMixEntryFilter<E> implements XEntryFilt
 
     @Override
     public boolean filtrate(E entry) {
-        XEntryFilter[] filters = this.filters.toArray(new XEntryFilter[0]);
-        for (XEntryFilter filter : filters) {
+        List<XEntryFilter<E>> filters = this.snapshot;
+        for (XEntryFilter<E> filter : filters) {
             if (filter.filtrate(entry)) {
                 return true;
             }
@@ -0,0 +1,441 @@
+package io.xjar.filter;
+
+import io.xjar.XEntryFilter;
+
+import java.util.*;
+
+/**
+ * 编译后的过滤器，把由 {@link XAllEntryFilter}，{@link XAnyEntryFilter}，{@link XNotEntryFilter} 和 {@link XAntEntryFilter}
+ * 组成的过滤器树一次性编译成一个按字符推进的确定性有限自动机，所有的ANT表达式在同一次扫描中并行匹配，
+ * 每个自动机状态都预先算好了整棵过滤器树的结果，所以过滤一个记录只需要一次线性扫描，既不回溯也不分配对象。
+ * 自动机状态按需构建并缓存，语义与逐个使用正则表达式匹配完全一致。
+ * 编译是对过滤器树的快照，之后再往原过滤器树中混入的过滤器不会生效。
+ * ANT表达式过滤器只编译指定的类型本身，其子类可能改写了用于匹配的文本，编译后按 {@link #toText(Object)} 匹配会改变语义。
+ *
+ * @author kongweiguang
+ */
+public abstract class XCompiledEntryFilter<E> implements XEntryFilter<E> {
+    private static final int MAX_STATES = 10000;
+
+    private static final byte LITERAL = 0;
+    private static final byte ANY = 1;
+    private static final byte STAR = 2;
+    private static final byte DOUBLE_STAR = 3;
+    private static final byte DIRECTORIES = 4;
+    private static final byte GROUP = 5;
+    private static final byte END = 6;
+
+    private static final char DIRECTORIES_MARK = 1;
+    private static final char DOUBLE_STAR_MARK = 2;
+    private static final char STAR_MARK = 3;
+    private static final char ANY_MARK = 4;
+
+    private static final char SEPARATOR = '/';
+    private static final char[] LINE_TERMINATORS = {'\n', '\r', (char) 0x85, (char) 0x2028, (char) 0x2029};
+
+    private final Class<?> leaf;
+    private final Node root;
+    private final byte[] kinds;
+    private final char[] literals;
+    private final int[] follows;
+    private final int[] groups;
+    private final int[] starts;
+    private final int[] ends;
+
+    private final int[] asciiClasses = new int[128];
+    private final char[] highChars;
+    private final int[] highClasses;
+    private final int otherClass;
+    private final char[] representatives;
+
+    private final Map<BitSet, State> states = new HashMap<>();
+    private volatile State start;
+
+    /**
+     * @param filter 过滤器树
+     * @param leaf   可以编译的ANT表达式过滤器类型，其 toText 必须与 {@link #toText(Object)} 一致
+     */
+    protected XCompiledEntryFilter(XEntryFilter<? extends E> filter, Class<? extends XAntEntryFilter<?>> leaf) {
+        List<byte[]> patternKinds = new ArrayList<>();
+        List<char[]> patternLiterals = new ArrayList<>();
+        this.leaf = leaf;
+        this.root = compile(filter, patternKinds, patternLiterals);
+
+        int count = 0;
+        for (byte[] pattern : patternKinds) {
+            count += pattern.length + 1;
+            for (byte kind : pattern) {
+                if (kind == DIRECTORIES) {
+                    count++;
+                }
+            }
+        }
+        this.kinds = new byte[count];
+        this.literals = new char[count];
+        this.follows = new int[count];
+        this.groups = new int[count];
+        this.starts = new int[patternKinds.size()];
+        this.ends = new int[patternKinds.size()];
+        int index = 0;
+        for (int p = 0; p < patternKinds.size(); p++) {
+            byte[] pattern = patternKinds.get(p);
+            char[] chars = patternLiterals.get(p);
+            int first = index;
+            starts[p] = first;
+            index += pattern.length + 1;
+            for (int t = 0; t < pattern.length; t++) {
+                int state = first + t;
+                kinds[state] = pattern[t];
+                literals[state] = chars[t];
+                follows[state] = state + 1;
+                if (pattern[t] == DIRECTORIES) {
+                    int group = index++;
+                    kinds[group] = GROUP;
+                    follows[group] = state;
+                    groups[state] = group;
+                }
+            }
+            kinds[first + pattern.length] = END;
+            ends[p] = first + pattern.length;
+        }
+
+        SortedSet<Character> special = new TreeSet<>();
+        special.add(SEPARATOR);
+        for (char terminator : LINE_TERMINATORS) {
+            special.add(terminator);
+        }
+        for (int state = 0; state < count; state++) {
+            if (kinds[state] == LITERAL) {
+                special.add(literals[state]);
+            }
+        }
+        List<Character> highs = new ArrayList<>();
+        List<Character> all = new ArrayList<>(special);
+        this.representatives = new char[all.size() + 1];
+        for (int i = 0; i < all.size(); i++) {
+            char c = all.get(i);
+            representatives[i] = c;
+            if (c < 128) {
+                asciiClasses[c] = i;
+            } else {
+                highs.add(c);
+            }
+        }
+        this.otherClass = all.size();
+        char other = 0;
+        while (special.contains(other)) {
+            other++;
+        }
+        representatives[otherClass] = other;
+        for (char c = 0; c < 128; c++) {
+            if (!special.contains(c)) {
+                asciiClasses[c] = otherClass;
+            }
+        }
+        this.highChars = new char[highs.size()];
+        this.highClasses = new int[highs.size()];
+        for (int i = 0; i < highs.size(); i++) {
+            highChars[i] = highs.get(i);
+            highClasses[i] = all.indexOf(highs.get(i));
+        }
+    }
+
+    /**
+     * 判断过滤器树是否可以被编译，即只由 {@link XAllEntryFilter}，{@link XAnyEntryFilter}，{@link XNotEntryFilter} 和 {@code leaf} 类型本身的ANT表达式过滤器组成。
+     *
+     * @param filter 过滤器
+     * @param leaf   可以编译的ANT表达式过滤器类型
+     * @return 可以编译: {@code true} 否则: {@code false}
+     */
+    public static boolean isCompilable(XEntryFilter<?> filter, Class<? extends XAntEntryFilter<?>> leaf) {
+        if (filter instanceof XAllEntryFilter<?> || filter instanceof XAnyEntryFilter<?>) {
+            for (XEntryFilter<?> child : ((XMixEntryFilter<?>) filter).snapshot) {
+                if (!isCompilable(child, leaf)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (filter instanceof XNotEntryFilter<?>) {
+            return isCompilable(((XNotEntryFilter<?>) filter).getDelegate(), leaf);
+        }
+        return filter != null && filter.getClass() == leaf && tokenize(((XAntEntryFilter<?>) filter).getAnt()) != null;
+    }
+
+    @Override
+    public boolean filtrate(E entry) {
+        String text = toText(entry);
+        State state = start();
+        for (int i = 0, length = text.length(); i < length; i++) {
+            int clazz = classOf(text.charAt(i));
+            State next = state.next[clazz];
+            state = next != null ? next : transit(state, clazz);
+        }
+        return state.result;
+    }
+
+    /**
+     * 将记录转换成字符串形式，用于模式匹配。
+     *
+     * @param entry 记录
+     * @return 记录的字符串表达形式
+     */
+    protected abstract String toText(E entry);
+
+    private int classOf(char c) {
+        if (c < 128) {
+            return asciiClasses[c];
+        }
+        int index = Arrays.binarySearch(highChars, c);
+        return index >= 0 ? highClasses[index] : otherClass;
+    }
+
+    private State start() {
+        State state = start;
+        if (state != null) {
+            return state;
+        }
+        synchronized (states) {
+            if (start == null) {
+                BitSet set = new BitSet(kinds.length);
+                for (int first : starts) {
+                    close(set, first);
+                }
+                start = state(set);
+            }
+            return start;
+        }
+    }
+
+    private State transit(State state, int clazz) {
+        synchronized (states) {
+            State next = state.next[clazz];
+            if (next != null) {
+                return next;
+            }
+            char c = representatives[clazz];
+            boolean terminator = isLineTerminator(c);
+            BitSet set = new BitSet(kinds.length);
+            for (int s = state.set.nextSetBit(0); s >= 0; s = state.set.nextSetBit(s + 1)) {
+                switch (kinds[s]) {
+                    case LITERAL:
+                        if (c == literals[s]) {
+                            close(set, follows[s]);
+                        }
+                        break;
+                    case ANY:
+                        if (!terminator) {
+                            close(set, follows[s]);
+                        }
+                        break;
+                    case STAR:
+                        if (c != SEPARATOR) {
+                            close(set, s);
+                        }
+                        break;
+                    case DOUBLE_STAR:
+                        if (!terminator) {
+                            close(set, s);
+                        }
+                        break;
+                    case DIRECTORIES:
+                        if (c == SEPARATOR) {
+                            close(set, s);
+                        }
+                        if (!terminator) {
+                            set.set(groups[s]);
+                        }
+                        break;
+                    case GROUP:
+                        if (c == SEPARATOR) {
+                            close(set, follows[s]);
+                        }
+                        if (!terminator) {
+                            set.set(s);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (states.size() >= MAX_STATES) {
+                // 旧的状态通过起始状态和各自缓存的后继状态互相引用，需要连同起始状态一起丢弃才能被回收，
+                // 正在扫描的线程持有的旧状态在扫描结束后也不再可达
+                states.clear();
+                start = null;
+            }
+            next = state(set);
+            state.next[clazz] = next;
+            return next;
+        }
+    }
+
+    private State state(BitSet set) {
+        State state = states.get(set);
+        if (state == null) {
+            state = new State(set, representatives.length, root.evaluate(set, this));
+            states.put(set, state);
+        }
+        return state;
+    }
+
+    private void close(BitSet set, int state) {
+        while (!set.get(state)) {
+            set.set(state);
+            byte kind = kinds[state];
+            if (kind != STAR && kind != DOUBLE_STAR && kind != DIRECTORIES) {
+                return;
+            }
+            state = follows[state];
+        }
+    }
+
+    private boolean accepts(BitSet set, int pattern) {
+        return set.get(ends[pattern]);
+    }
+
+    private static boolean isLineTerminator(char c) {
+        for (char terminator : LINE_TERMINATORS) {
+            if (c == terminator) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Node compile(XEntryFilter<?> filter, List<byte[]> kinds, List<char[]> literals) {
+        if (filter instanceof XAllEntryFilter<?> || filter instanceof XAnyEntryFilter<?>) {
+            List<? extends XEntryFilter<?>> children = ((XMixEntryFilter<?>) filter).snapshot;
+            Node[] nodes = new Node[children.size()];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = compile(children.get(i), kinds, literals);
+            }
+            return new Mix(filter instanceof XAllEntryFilter<?>, nodes);
+        }
+        if (filter instanceof XNotEntryFilter<?>) {
+            return new Not(compile(((XNotEntryFilter<?>) filter).getDelegate(), kinds, literals));
+        }
+        if (filter != null && filter.getClass() == leaf) {
+            String ant = ((XAntEntryFilter<?>) filter).getAnt();
+            byte[] tokens = tokenize(ant);
+            if (tokens != null) {
+                kinds.add(tokens);
+                literals.add(normalize(ant).toCharArray());
+                return new Leaf(kinds.size() - 1);
+            }
+        }
+        throw new IllegalArgumentException("unsupported filter: " + filter);
+    }
+
+    /**
+     * 按 {@link XAntEntryFilter} 转换正则表达式的顺序把通配符替换成标记，每个字符对应一个记号，再去掉首尾的分隔符。
+     */
+    private static String normalize(String ant) {
+        String text = ant
+                .replace("?", String.valueOf(ANY_MARK))
+                .replace("**/", String.valueOf(DIRECTORIES_MARK))
+                .replace("**", String.valueOf(DOUBLE_STAR_MARK))
+                .replace("*", String.valueOf(STAR_MARK));
+        int from = 0;
+        int to = text.length();
+        while (from < to && text.charAt(from) == SEPARATOR) from++;
+        while (to > from && text.charAt(to - 1) == SEPARATOR) to--;
+        return text.substring(from, to);
+    }
+
+    private static byte[] tokenize(String ant) {
+        for (int i = 0; i < ant.length(); i++) {
+            if (ant.charAt(i) <= ANY_MARK) {
+                return null;
+            }
+        }
+        String text = normalize(ant);
+        byte[] tokens = new byte[text.length()];
+        for (int i = 0; i < text.length(); i++) {
+            switch (text.charAt(i)) {
+                case DIRECTORIES_MARK:
+                    tokens[i] = DIRECTORIES;
+                    break;
+                case DOUBLE_STAR_MARK:
+                    tokens[i] = DOUBLE_STAR;
+                    break;
+                case STAR_MARK:
+                    tokens[i] = STAR;
+                    break;
+                case ANY_MARK:
+                    tokens[i] = ANY;
+                    break;
+                default:
+                    tokens[i] = LITERAL;
+                    break;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 自动机状态，包含其对应的NFA状态集合，整棵过滤器树在该状态下的结果和按字符类别缓存的后继状态
+     */
+    private static final class State {
+        private final BitSet set;
+        private final boolean result;
+        private final State[] next;
+
+        private State(BitSet set, int classes, boolean result) {
+            this.set = set;
+            this.result = result;
+            this.next = new State[classes];
+        }
+    }
+
+    private abstract static class Node {
+
+        abstract boolean evaluate(BitSet set, XCompiledEntryFilter<?> filter);
+    }
+
+    private static final class Mix extends Node {
+        private final boolean all;
+        private final Node[] nodes;
+
+        private Mix(boolean all, Node[] nodes) {
+            this.all = all;
+            this.nodes = nodes;
+        }
+
+        @Override
+        boolean evaluate(BitSet set, XCompiledEntryFilter<?> filter) {
+            for (Node node : nodes) {
+                if (node.evaluate(set, filter) != all) {
+                    return !all;
+                }
+            }
+            return all;
+        }
+    }
+
+    private static final class Not extends Node {
+        private final Node node;
+
+        private Not(Node node) {
+            this.node = node;
+        }
+
+        @Override
+        boolean evaluate(BitSet set, XCompiledEntryFilter<?> filter) {
+            return !node.evaluate(set, filter);
+        }
+    }
+
+    private static final class Leaf extends Node {
+        private final int pattern;
+
+        private Leaf(int pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        boolean evaluate(BitSet set, XCompiledEntryFilter<?> filter) {
+            return filter.accepts(set, pattern);
+        }
+    }
+}
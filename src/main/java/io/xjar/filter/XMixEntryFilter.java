@@ -2,8 +2,11 @@ package io.xjar.filter;
 
 import io.xjar.XEntryFilter;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -14,6 +17,7 @@ import java.util.Set;
  */
 public abstract class XMixEntryFilter<E> implements XEntryFilter<E> {
     protected final Set<XEntryFilter<? extends E>> filters;
+    protected volatile List<XEntryFilter<E>> snapshot;
 
     protected XMixEntryFilter() {
         this(null);
@@ -21,19 +25,36 @@ public abstract class XMixEntryFilter<E> implements XEntryFilter<E> {
 
     protected XMixEntryFilter(Collection<? extends XEntryFilter<? extends E>> filters) {
         this.filters = filters != null ? new LinkedHashSet<>(filters) : new LinkedHashSet<XEntryFilter<? extends E>>();
+        this.snapshot = snapshot();
     }
 
-    public boolean add(XEntryFilter<? extends E> filter) {
-        return filters.add(filter);
+    public synchronized boolean add(XEntryFilter<? extends E> filter) {
+        boolean added = filters.add(filter);
+        snapshot = snapshot();
+        return added;
     }
 
-    public boolean remove(XEntryFilter<? extends E> filter) {
-        return filters.remove(filter);
+    public synchronized boolean remove(XEntryFilter<? extends E> filter) {
+        boolean removed = filters.remove(filter);
+        snapshot = snapshot();
+        return removed;
     }
 
     public int size() {
         return filters.size();
     }
 
+    /**
+     * 过滤器只会被传入 {@code E} 类型的记录，按 {@code XEntryFilter<E>} 使用 {@code XEntryFilter<? extends E>} 与原来的原始类型调用等价。
+     */
+    @SuppressWarnings("unchecked")
+    private List<XEntryFilter<E>> snapshot() {
+        List<XEntryFilter<E>> snapshot = new ArrayList<>(filters.size());
+        for (XEntryFilter<? extends E> filter : filters) {
+            snapshot.add((XEntryFilter<E>) filter);
+        }
+        return Collections.unmodifiableList(snapshot);
+    }
+
     public abstract XMixEntryFilter<E> mix(XEntryFilter<? extends E> filter);
 }
@@ -19,4 +19,8 @@ public class XNotEntryFilter<E> implements XEntryFilter<E> {
     public boolean filtrate(E entry) {
         return !delegate.filtrate(entry);
     }
+
+    public XEntryFilter<E> getDelegate() {
+        return delegate;
+    }
 }
@@ -1,21 +1,25 @@
 package io.xjar.jar;
 
+import io.xjar.XConstants;
 import io.xjar.XDecryptor;
+import io.xjar.XEncryptedClassPath;
 import io.xjar.XEncryptor;
+import io.xjar.XEntryIndex;
 import io.xjar.XKit;
+import io.xjar.XResourceCache;
+import io.xjar.XURLCache;
 import io.xjar.key.XKey;
-import io.xjar.reflection.XReflection;
+import io.xjar.reflection.XClassPath;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Method;
-import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.security.CodeSigner;
+import java.net.URLConnection;
 import java.security.CodeSource;
 import java.util.Enumeration;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
 
 /**
  * JAR包类加载器
@@ -24,11 +28,11 @@ import java.util.Enumeration;
  * 2018/11/25 22:07
  */
 public class XJarClassLoader extends URLClassLoader {
+    private final XEntryIndex xEntryIndex;
     private final XJarURLHandler xJarURLHandler;
-    private final Object urlClassPath;
-    private final Method getResource;
-    private final Method getCodeSourceURL;
-    private final Method getCodeSigners;
+    private final XClassPath xClassPath;
+    private final XEncryptedClassPath xEncryptedClassPath;
+    private final XURLCache xJarURLCache;
 
     static {
         ClassLoader.registerAsParallelCapable();
@@ -36,11 +40,12 @@ public class XJarClassLoader extends URLClassLoader {
 
     public XJarClassLoader(URL[] urls, ClassLoader parent, XDecryptor xDecryptor, XEncryptor xEncryptor, XKey xKey) throws Exception {
         super(urls, parent);
-        this.xJarURLHandler = new XJarURLHandler(xDecryptor, xEncryptor, xKey, this);
-        this.urlClassPath = XReflection.field(URLClassLoader.class, "ucp").get(this).value();
-        this.getResource = XReflection.method(urlClassPath.getClass(), "getResource", String.class).method();
-        this.getCodeSourceURL = XReflection.method(getResource.getReturnType(), "getCodeSourceURL").method();
-        this.getCodeSigners = XReflection.method(getResource.getReturnType(), "getCodeSigners").method();
+        this.xEntryIndex = new XEntryIndex(this);
+        this.xJarURLHandler = new XJarURLHandler(xDecryptor, xEncryptor, xKey, xEntryIndex);
+        this.xClassPath = new XClassPath(this);
+        this.xEncryptedClassPath = new XEncryptedClassPath(xClassPath, xEntryIndex, xDecryptor, xKey);
+        this.xJarURLCache = new XURLCache(xJarURLHandler, xEntryIndex, XConstants.DEFAULT_URL_CACHE_CAPACITY);
+        this.xJarURLHandler.delegates(xJarURLCache);
     }
 
     @Override
@@ -49,11 +54,7 @@ public class XJarClassLoader extends URLClassLoader {
         if (url == null) {
             return null;
         }
-        try {
-            return new URL(url.getProtocol(), url.getHost(), url.getPort(), url.getFile(), xJarURLHandler);
-        } catch (MalformedURLException e) {
-            return url;
-        }
+        return wrap(url);
     }
 
     @Override
@@ -62,27 +63,58 @@ public class XJarClassLoader extends URLClassLoader {
         if (enumeration == null) {
             return null;
         }
-        return new XJarEnumeration(enumeration);
+        XURLCache cache = this.xJarURLCache;
+        return cache != null ? cache.wrap(enumeration) : enumeration;
+    }
+
+    /**
+     * 开启或关闭内存映射读取，见 {@link XEncryptedClassPath#mmap(boolean)}
+     *
+     * @param enabled 是否开启
+     */
+    public void mmap(boolean enabled) {
+        xEncryptedClassPath.mmap(enabled);
+    }
+
+    /**
+     * 开启解密后的资源内容缓存，重复读取同一个加密资源时直接返回缓存的明文。
+     *
+     * @param xResourceCache 解密后的资源内容缓存，为 {@code null} 时关闭
+     */
+    public void cache(XResourceCache xResourceCache) {
+        xJarURLHandler.cache(xResourceCache);
+    }
+
+    /**
+     * @return 解密后的资源内容缓存的统计，没有开启时返回 {@code null}
+     */
+    public XResourceCache getResourceCache() {
+        return xJarURLHandler.getResourceCache();
     }
 
     @Override
     protected Class<?> findClass(String name) throws ClassNotFoundException {
+        String path = name.replace('.', '/').concat(".class");
+        if (xEntryIndex.maybeContains(path)) {
+            Class<?> clazz = findEncryptedClass(name, path);
+            if (clazz != null) {
+                return clazz;
+            }
+        }
         try {
             return super.findClass(name);
         } catch (ClassFormatError e) {
-            String path = name.replace('.', '/').concat(".class");
             URL url = findResource(path);
             if (url == null) {
                 throw new ClassNotFoundException(name, e);
             }
-            try (InputStream in = url.openStream()) {
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                XKit.transfer(in, bos);
-                byte[] bytes = bos.toByteArray();
-                Object resource = getResource.invoke(urlClassPath, path);
-                URL codeSourceURL = (URL) getCodeSourceURL.invoke(resource);
-                CodeSigner[] codeSigners = (CodeSigner[]) getCodeSigners.invoke(resource);
-                CodeSource codeSource = new CodeSource(codeSourceURL, codeSigners);
+            try {
+                URLConnection connection = url.openConnection();
+                byte[] bytes;
+                try (InputStream in = connection.getInputStream()) {
+                    bytes = XKit.read(in, connection.getContentLengthLong());
+                }
+                CodeSource codeSource = xClassPath.getCodeSource(xClassPath.getResource(path));
                 return defineClass(name, bytes, 0, bytes.length, codeSource);
             } catch (Throwable t) {
                 throw new ClassNotFoundException(name, t);
@@ -90,29 +122,78 @@ public class XJarClassLoader extends URLClassLoader {
         }
     }
 
-    private class XJarEnumeration implements Enumeration<URL> {
-        private final Enumeration<URL> enumeration;
-
-        XJarEnumeration(Enumeration<URL> enumeration) {
-            this.enumeration = enumeration;
+    /**
+     * 直接定位并解密索引中记录的加密类并定义类所在的包
+     *
+     * @param name 类名
+     * @param path 类资源路径
+     * @return 类，当该资源实际定位到的类路径中没有被加密时返回 {@code null}
+     * @throws ClassNotFoundException 读取或定义类失败
+     */
+    private Class<?> findEncryptedClass(String name, String path) throws ClassNotFoundException {
+        try {
+            XEncryptedClassPath.Entry entry = xEncryptedClassPath.read(path);
+            if (entry == null) {
+                return null;
+            }
+            CodeSource codeSource = entry.getCodeSource();
+            getAndVerifyPackage(name, entry.getManifest(), codeSource.getLocation());
+            return defineClass(name, entry.getBytes(), codeSource);
+        } catch (Throwable t) {
+            throw new ClassNotFoundException(name, t);
         }
+    }
 
-        @Override
-        public boolean hasMoreElements() {
-            return enumeration.hasMoreElements();
+    /**
+     * 与 {@link URLClassLoader} 定义未加密的类时一样，按所在JAR包的清单文件定义类所在的包并检查包的密封，
+     * 使加密类的包同样带有 Implementation-Title/Version 等信息。
+     *
+     * @param name     类名
+     * @param manifest 所在JAR包的清单文件，可能为 {@code null}
+     * @param url      代码来源URL
+     */
+    private void getAndVerifyPackage(String name, Manifest manifest, URL url) {
+        int index = name.lastIndexOf('.');
+        if (index < 0) {
+            return;
         }
-
-        @Override
-        public URL nextElement() {
-            URL url = enumeration.nextElement();
-            if (url == null) {
-                return null;
+        String pkgname = name.substring(0, index);
+        Package pkg = getDefinedPackage(pkgname);
+        if (pkg != null) {
+            if (pkg.isSealed() ? !pkg.isSealed(url) : manifest != null && isSealed(pkgname, manifest)) {
+                throw new SecurityException("sealing violation: package " + pkgname + (pkg.isSealed() ? " is sealed" : " already loaded"));
             }
-            try {
-                return new URL(url.getProtocol(), url.getHost(), url.getPort(), url.getFile(), xJarURLHandler);
-            } catch (MalformedURLException e) {
-                return url;
+            return;
+        }
+        try {
+            if (manifest != null) {
+                definePackage(pkgname, manifest, url);
+            } else {
+                definePackage(pkgname, null, null, null, null, null, null, null);
+            }
+        } catch (IllegalArgumentException e) {
+            // 其他线程已经定义了该包
+            if (getDefinedPackage(pkgname) == null) {
+                throw new IllegalStateException("cannot find package " + pkgname, e);
             }
         }
     }
+
+    private static boolean isSealed(String pkgname, Manifest manifest) {
+        Attributes attributes = manifest.getAttributes(pkgname.replace('.', '/').concat("/"));
+        String sealed = attributes != null ? attributes.getValue(Attributes.Name.SEALED) : null;
+        if (sealed == null) {
+            attributes = manifest.getMainAttributes();
+            sealed = attributes != null ? attributes.getValue(Attributes.Name.SEALED) : null;
+        }
+        return "true".equalsIgnoreCase(sealed);
+    }
+
+    /**
+     * 把原始URL包装成使用 XJar 协议处理器的URL，构造过程中读取加密索引时缓存尚未创建，直接返回原始URL。
+     */
+    private URL wrap(URL url) {
+        XURLCache cache = this.xJarURLCache;
+        return cache != null ? cache.wrap(url) : url;
+    }
 }
@@ -0,0 +1,32 @@
+package io.xjar.jar;
+
+import io.xjar.XEntryFilter;
+import io.xjar.filter.XCompiledEntryFilter;
+import org.apache.commons.compress.archivers.jar.JarArchiveEntry;
+
+/**
+ * Jar记录编译后的过滤器
+ *
+ * @author kongweiguang
+ */
+public class XJarCompiledEntryFilter extends XCompiledEntryFilter<JarArchiveEntry> implements XEntryFilter<JarArchiveEntry> {
+
+    public XJarCompiledEntryFilter(XEntryFilter<? extends JarArchiveEntry> filter) {
+        super(filter, XJarAntEntryFilter.class);
+    }
+
+    /**
+     * 判断过滤器树是否可以被编译，ANT表达式过滤器只能是 {@link XJarAntEntryFilter} 本身，其子类可能改写了匹配的文本。
+     *
+     * @param filter 过滤器树
+     * @return 可以编译: {@code true} 否则: {@code false}
+     */
+    public static boolean isCompilable(XEntryFilter<?> filter) {
+        return isCompilable(filter, XJarAntEntryFilter.class);
+    }
+
+    @Override
+    protected String toText(JarArchiveEntry entry) {
+        return entry.getName();
+    }
+}
@@ -86,7 +86,7 @@ public class XJarDecryptor extends XEntryDecryptor<JarArchiveEntry> implements X
                     jarArchiveEntry.setTime(entry.getTime());
                     zos.putArchiveEntry(jarArchiveEntry);
                     boolean filtered = filtrate(entry);
-                    XDecryptor decryptor = filtered ? xDecryptor : xNopDecryptor;
+                    XDecryptor decryptor = !filtered ? xNopDecryptor : XJarEntryMode.decryptor(XJarEntryMode.of(entry), xDecryptor);
                     try (OutputStream eos = decryptor.decrypt(key, nos)) {
                         XKit.transfer(nis, eos);
                     }
@@ -5,10 +5,13 @@ import io.xjar.key.XKey;
 import org.apache.commons.compress.archivers.jar.JarArchiveEntry;
 import org.apache.commons.compress.archivers.jar.JarArchiveInputStream;
 import org.apache.commons.compress.archivers.jar.JarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 
 import java.io.*;
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 import java.util.zip.Deflater;
@@ -21,6 +24,7 @@ import java.util.zip.Deflater;
  */
 public class XJarEncryptor extends XEntryEncryptor<JarArchiveEntry> implements XEncryptor, XConstants {
     private final int level;
+    private final XEncryptOptions options;
 
     public XJarEncryptor(XEncryptor xEncryptor) {
         this(xEncryptor, new XJarAllEntryFilter());
@@ -35,26 +39,117 @@ public class XJarEncryptor extends XEntryEncryptor<JarArchiveEntry> implements X
     }
 
     public XJarEncryptor(XEncryptor xEncryptor, int level, XEntryFilter<JarArchiveEntry> filter) {
+        this(xEncryptor, level, filter, new XEncryptOptions());
+    }
+
+    public XJarEncryptor(XEncryptor xEncryptor, XEntryFilter<JarArchiveEntry> filter, XEncryptOptions options) {
+        this(xEncryptor, Deflater.DEFAULT_COMPRESSION, filter, options);
+    }
+
+    public XJarEncryptor(XEncryptor xEncryptor, int level, XEntryFilter<JarArchiveEntry> filter, XEncryptOptions options) {
         super(xEncryptor, filter);
         this.level = level;
+        this.options = options;
     }
 
     @Override
     public void encrypt(XKey key, File src, File dest) throws IOException {
         try (
-                FileInputStream fis = new FileInputStream(src);
+                ZipFile zipFile = ZipFile.builder().setFile(src).get();
                 FileOutputStream fos = new FileOutputStream(dest)
         ) {
-            encrypt(key, fis, fos);
+            encrypt(key, zipFile, fos);
 //            XGo.make(dest, key);
         }
     }
 
+    /**
+     * 基于随机访问的原文包加密，不需要加密的记录直接拷贝压缩后的原始数据及其CRC和大小，省去解压再压缩的开销。
+     *
+     * @param key     密钥
+     * @param zipFile 原文包
+     * @param out     加密包输出流
+     * @throws IOException I/O 异常
+     */
+    public void encrypt(XKey key, ZipFile zipFile, OutputStream out) throws IOException {
+        options.check(key);
+        JarArchiveOutputStream zos = null;
+        List<XIndexEntry> indexes = new ArrayList<>();
+        XMemoryBudget budget = new XMemoryBudget(options.getMemory());
+        try {
+            zos = new JarArchiveOutputStream(out);
+            zos.setLevel(level);
+            XUnclosedOutputStream nos = new XUnclosedOutputStream(zos);
+            Manifest manifest = null;
+            Enumeration<ZipArchiveEntry> entries = zipFile.getEntriesInPhysicalOrder();
+            while (entries.hasMoreElements()) {
+                ZipArchiveEntry entry = entries.nextElement();
+                if (entry.getName().startsWith(XJAR_SRC_DIR)
+                    || entry.getName().endsWith(XJAR_INF_DIR)
+                    || entry.getName().endsWith(XJAR_INF_DIR + XJAR_INF_IDX)
+                ) {
+                    continue;
+                }
+                if (entry.isDirectory()) {
+                    copy(zipFile, entry, zos);
+                } else if (entry.getName().equals(META_INF_MANIFEST)) {
+                    try (InputStream in = zipFile.getInputStream(entry)) {
+                        manifest = manifest(in);
+                    }
+                    JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
+                    jarArchiveEntry.setTime(entry.getTime());
+                    zos.putArchiveEntry(jarArchiveEntry);
+                    manifest.write(nos);
+                    zos.closeArchiveEntry();
+                } else if (filtrate(new JarArchiveEntry(entry))) {
+                    String mode = options.mode(entry.getName(), entry.getSize());
+                    XIndexEntry index = options.index(entry.getName(), mode).plain(entry.getSize(), entry.getCrc());
+                    indexes.add(index);
+                    if (mode != null) {
+                        try (InputStream in = zipFile.getInputStream(entry)) {
+                            store(key, entry, index, in, zos, budget);
+                        }
+                        continue;
+                    }
+                    JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
+                    jarArchiveEntry.setTime(entry.getTime());
+                    zos.putArchiveEntry(jarArchiveEntry);
+                    try (
+                            InputStream in = zipFile.getInputStream(entry);
+                            OutputStream eos = xEncryptor.encrypt(key, index.count(nos))
+                    ) {
+                        XKit.transfer(in, eos);
+                    }
+                    zos.closeArchiveEntry();
+                } else {
+                    copy(zipFile, entry, zos);
+                }
+            }
+            finish(zos, indexes, manifest);
+        } finally {
+            XKit.close(zos);
+        }
+    }
+
     @Override
     public void encrypt(XKey key, InputStream in, OutputStream out) throws IOException {
+        encrypt(key, in, out, new XMemoryBudget(options.getMemory()));
+    }
+
+    /**
+     * 加密JAR包，与外层的加密过程共享内存预算
+     *
+     * @param key    密钥
+     * @param in     原文包输入流
+     * @param out    加密包输出流
+     * @param budget 内存预算
+     * @throws IOException I/O 异常
+     */
+    public void encrypt(XKey key, InputStream in, OutputStream out, XMemoryBudget budget) throws IOException {
+        options.check(key);
         JarArchiveInputStream zis = null;
         JarArchiveOutputStream zos = null;
-        Set<String> indexes = new LinkedHashSet<>();
+        List<XIndexEntry> indexes = new ArrayList<>();
         try {
             zis = new JarArchiveInputStream(in);
             zos = new JarArchiveOutputStream(out);
@@ -75,61 +170,111 @@ public class XJarEncryptor extends XEntryEncryptor<JarArchiveEntry> implements X
                     jarArchiveEntry.setTime(entry.getTime());
                     zos.putArchiveEntry(jarArchiveEntry);
                 } else if (entry.getName().equals(META_INF_MANIFEST)) {
-                    manifest = new Manifest(nis);
-                    Attributes attributes = manifest.getMainAttributes();
-                    String mainClass = attributes.getValue("Main-Class");
-                    if (mainClass != null) {
-                        attributes.putValue("Jar-Main-Class", mainClass);
-                        attributes.putValue("Main-Class", "io.xjar.jar.XJarLauncher");
-                    }
+                    manifest = manifest(nis);
                     JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
                     jarArchiveEntry.setTime(entry.getTime());
                     zos.putArchiveEntry(jarArchiveEntry);
                     manifest.write(nos);
                 } else {
-                    JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
-                    jarArchiveEntry.setTime(entry.getTime());
-                    zos.putArchiveEntry(jarArchiveEntry);
                     boolean filtered = filtrate(entry);
+                    String mode = filtered ? options.mode(entry.getName(), entry.getSize()) : null;
+                    XIndexEntry index = filtered ? options.index(entry.getName(), mode) : null;
                     if (filtered) {
-                        indexes.add(entry.getName());
+                        indexes.add(index);
+                    }
+                    InputStream ein = filtered ? index.measure(nis) : nis;
+                    if (mode != null) {
+                        store(key, entry, index, ein, zos, budget);
+                        continue;
                     }
+                    JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
+                    jarArchiveEntry.setTime(entry.getTime());
+                    zos.putArchiveEntry(jarArchiveEntry);
                     XEncryptor encryptor = filtered ? xEncryptor : xNopEncryptor;
-                    try (OutputStream eos = encryptor.encrypt(key, nos)) {
-                        XKit.transfer(nis, eos);
+                    try (OutputStream eos = encryptor.encrypt(key, filtered ? index.count(nos) : nos)) {
+                        XKit.transfer(ein, eos);
                     }
                 }
                 zos.closeArchiveEntry();
             }
 
-            if (!indexes.isEmpty()) {
-                JarArchiveEntry xjarInfDir = new JarArchiveEntry(XJAR_INF_DIR);
-                xjarInfDir.setTime(System.currentTimeMillis());
-                zos.putArchiveEntry(xjarInfDir);
-                zos.closeArchiveEntry();
-
-                JarArchiveEntry xjarInfIdx = new JarArchiveEntry(XJAR_INF_DIR + XJAR_INF_IDX);
-                xjarInfIdx.setTime(System.currentTimeMillis());
-                zos.putArchiveEntry(xjarInfIdx);
-                for (String index : indexes) {
-                    zos.write(index.getBytes());
-                    zos.write(CRLF.getBytes());
-                }
-                zos.closeArchiveEntry();
-            }
-
-            String mainClass = manifest != null && manifest.getMainAttributes() != null ? manifest.getMainAttributes().getValue("Main-Class") : null;
-            if (mainClass != null) {
-                XInjector.inject(zos);
-            }
-
-            zos.finish();
+            finish(zos, indexes, manifest);
         } finally {
             XKit.close(zis);
             XKit.close(zos);
         }
     }
 
+    /**
+     * 按指定的加密模式加密并以 STORED 方式写入记录：先压缩后加密的记录省去对密文的无效压缩，运行时也不再需要先解压密文；
+     * 可跳转的记录在运行时可以直接定位到任意位置；分块的记录在构建和运行时都并行加/解密。
+     */
+    private void store(XKey key, ZipArchiveEntry entry, XIndexEntry index, InputStream in, JarArchiveOutputStream zos, XMemoryBudget budget) throws IOException {
+        String mode = index.getMode();
+        XEncryptor encryptor = XJarEntryMode.encryptor(mode, xEncryptor, level);
+        try (XSpillBuffer buffer = new XSpillBuffer(budget)) {
+            encryptor.encrypt(key, in, buffer);
+            index.cipher(buffer.size());
+            JarArchiveEntry jarArchiveEntry = new JarArchiveEntry(entry.getName());
+            jarArchiveEntry.setMethod(JarArchiveEntry.STORED);
+            XJarEntryMode.mark(jarArchiveEntry, mode);
+            jarArchiveEntry.setSize(buffer.size());
+            jarArchiveEntry.setTime(entry.getTime());
+            jarArchiveEntry.setCrc(buffer.crc());
+            zos.putArchiveEntry(jarArchiveEntry);
+            buffer.writeTo(zos);
+            zos.closeArchiveEntry();
+        }
+    }
+
+    /**
+     * 原样拷贝记录压缩后的数据
+     */
+    private void copy(ZipFile zipFile, ZipArchiveEntry entry, JarArchiveOutputStream zos) throws IOException {
+        try (InputStream raw = zipFile.getRawInputStream(entry)) {
+            zos.addRawArchiveEntry(entry, raw);
+        }
+    }
+
+    /**
+     * 写入加密索引并注入 XJar 的启动器
+     */
+    private void finish(JarArchiveOutputStream zos, List<XIndexEntry> indexes, Manifest manifest) throws IOException {
+        if (!indexes.isEmpty()) {
+            JarArchiveEntry xjarInfDir = new JarArchiveEntry(XJAR_INF_DIR);
+            xjarInfDir.setTime(System.currentTimeMillis());
+            zos.putArchiveEntry(xjarInfDir);
+            zos.closeArchiveEntry();
+
+            JarArchiveEntry xjarInfIdx = new JarArchiveEntry(XJAR_INF_DIR + XJAR_INF_IDX);
+            xjarInfIdx.setTime(System.currentTimeMillis());
+            zos.putArchiveEntry(xjarInfIdx);
+            zos.write(XIndexTable.write(indexes));
+            zos.closeArchiveEntry();
+        }
+
+        String mainClass = manifest != null && manifest.getMainAttributes() != null ? manifest.getMainAttributes().getValue("Main-Class") : null;
+        if (mainClass != null) {
+            XInjector.inject(zos);
+        }
+
+        zos.finish();
+    }
+
+    /**
+     * 读取清单文件并把启动类替换成 XJar 的启动器
+     */
+    private Manifest manifest(InputStream in) throws IOException {
+        Manifest manifest = new Manifest(in);
+        Attributes attributes = manifest.getMainAttributes();
+        String mainClass = attributes.getValue("Main-Class");
+        if (mainClass != null) {
+            attributes.putValue("Jar-Main-Class", mainClass);
+            attributes.putValue("Main-Class", "io.xjar.jar.XJarLauncher");
+        }
+        return manifest;
+    }
+
     /**
      * 断言输入的jar是否有entry需要被加密
      *
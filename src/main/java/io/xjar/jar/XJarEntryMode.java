@@ -0,0 +1,107 @@
+package io.xjar.jar;
+
+import io.xjar.*;
+import org.apache.commons.compress.archivers.zip.UnrecognizedExtraField;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipExtraField;
+import org.apache.commons.compress.archivers.zip.ZipShort;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 记录的加密模式标记，以扩展字段的形式写在记录头中，离线解密时顺序读取记录即可得知其加密模式，不需要先读取加密索引。
+ * 运行时仍然以加密索引为准。
+ *
+ * @author kongweiguang
+ */
+public final class XJarEntryMode implements XConstants {
+    private static final ZipShort HEADER_ID = new ZipShort(0x584A);
+
+    private XJarEntryMode() {
+    }
+
+    /**
+     * 标记记录的加密模式
+     *
+     * @param entry 记录
+     * @param mode  加密模式，为 {@code null} 时不标记
+     */
+    public static void mark(ZipArchiveEntry entry, String mode) {
+        if (mode == null) {
+            return;
+        }
+        byte[] data = mode.getBytes(StandardCharsets.US_ASCII);
+        UnrecognizedExtraField field = new UnrecognizedExtraField();
+        field.setHeaderId(HEADER_ID);
+        field.setLocalFileDataData(data);
+        field.setCentralDirectoryData(data);
+        entry.addExtraField(field);
+    }
+
+    /**
+     * 读取记录的加密模式，没有标记的 STORED 记录是先压缩后加密的。
+     *
+     * @param entry 记录
+     * @return 加密模式，默认模式返回 {@code null}
+     */
+    public static String of(ZipArchiveEntry entry) {
+        ZipExtraField field = entry.getExtraField(HEADER_ID);
+        if (field != null) {
+            return new String(field.getLocalFileDataData(), StandardCharsets.US_ASCII);
+        }
+        return entry.getMethod() == ZipArchiveEntry.STORED ? XJAR_MODE_COMPRESSED : null;
+    }
+
+    /**
+     * 选择加密模式对应的加密器，构建时和运行时的URL处理器都以此为准。
+     *
+     * @param mode       加密模式，为 {@code null} 时使用默认模式
+     * @param xEncryptor 默认模式的加密器，同时也是先压缩后加密的记录的加密器
+     * @param level      先压缩后加密的记录的压缩级别
+     * @return 加密器
+     */
+    public static XEncryptor encryptor(String mode, XEncryptor xEncryptor, int level) {
+        if (mode == null) {
+            return xEncryptor;
+        }
+        switch (mode) {
+            case XJAR_MODE_SEEKABLE:
+                return new XSeekableEncryptor();
+            case XJAR_MODE_CHUNKED:
+                return new XChunkedEncryptor();
+            default:
+                return new XCompressedEncryptor(xEncryptor, level);
+        }
+    }
+
+    /**
+     * 选择加密模式对应的解密器，离线解密、类加载和URL处理器都以此为准。
+     *
+     * @param mode       加密模式，为 {@code null} 时使用默认模式
+     * @param xDecryptor 默认模式的解密器，同时也是先压缩后加密的记录的解密器
+     * @return 解密器
+     */
+    public static XDecryptor decryptor(String mode, XDecryptor xDecryptor) {
+        if (mode == null) {
+            return xDecryptor;
+        }
+        switch (mode) {
+            case XJAR_MODE_SEEKABLE:
+                return new XSeekableDecryptor();
+            case XJAR_MODE_CHUNKED:
+                return new XChunkedDecryptor();
+            default:
+                return new XCompressedDecryptor(xDecryptor);
+        }
+    }
+
+    /**
+     * 判断加密模式是否本身支持部分读取，可跳转和分块加密的资源不需要缓存解密后的完整内容。
+     *
+     * @param mode 加密模式
+     * @return 是否支持部分读取
+     */
+    public static boolean isPartial(String mode) {
+        return XJAR_MODE_SEEKABLE.equals(mode) || XJAR_MODE_CHUNKED.equals(mode);
+    }
+}
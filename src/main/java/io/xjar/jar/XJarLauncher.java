@@ -51,6 +51,8 @@ public class XJarLauncher implements XConstants {
             xJarClassLoader = new XJarClassLoader(new URL[]{url}, classLoader.getParent(), xLauncher.xDecryptor, xLauncher.xEncryptor, xLauncher.xKey);
         }
 
+        xJarClassLoader.mmap(xLauncher.mmap);
+        xJarClassLoader.cache(xLauncher.resourceCache());
         Thread.currentThread().setContextClassLoader(xJarClassLoader);
         ProtectionDomain domain = this.getClass().getProtectionDomain();
         CodeSource source = domain.getCodeSource();
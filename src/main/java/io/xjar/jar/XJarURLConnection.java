@@ -2,8 +2,13 @@ package io.xjar.jar;
 
 import io.xjar.XDecryptor;
 import io.xjar.XEncryptor;
+import io.xjar.XKit;
+import io.xjar.XResourceCache;
+import io.xjar.XSeekableDecryptor;
+import io.xjar.XSeekableInputStream;
 import io.xjar.key.XKey;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -30,13 +35,32 @@ public class XJarURLConnection extends JarURLConnection {
     private final XDecryptor xDecryptor;
     private final XEncryptor xEncryptor;
     private final XKey xKey;
+    private final long size;
+    private final XResourceCache xResourceCache;
 
     public XJarURLConnection(JarURLConnection jarURLConnection, XDecryptor xDecryptor, XEncryptor xEncryptor, XKey xKey) throws MalformedURLException {
+        this(jarURLConnection, xDecryptor, xEncryptor, xKey, -1);
+    }
+
+    /**
+     * @param size 加密索引中记录的明文长度，未知时为 -1
+     */
+    public XJarURLConnection(JarURLConnection jarURLConnection, XDecryptor xDecryptor, XEncryptor xEncryptor, XKey xKey, long size) throws MalformedURLException {
+        this(jarURLConnection, xDecryptor, xEncryptor, xKey, size, null);
+    }
+
+    /**
+     * @param size           加密索引中记录的明文长度，未知时为 -1
+     * @param xResourceCache 解密后的资源内容缓存，为 {@code null} 时每次读取都重新解密
+     */
+    public XJarURLConnection(JarURLConnection jarURLConnection, XDecryptor xDecryptor, XEncryptor xEncryptor, XKey xKey, long size, XResourceCache xResourceCache) throws MalformedURLException {
         super(jarURLConnection.getURL());
         this.jarURLConnection = jarURLConnection;
         this.xDecryptor = xDecryptor;
         this.xEncryptor = xEncryptor;
         this.xKey = xKey;
+        this.size = size;
+        this.xResourceCache = xResourceCache;
     }
 
     @Override
@@ -71,12 +95,20 @@ public class XJarURLConnection extends JarURLConnection {
 
     @Override
     public int getContentLength() {
-        return jarURLConnection.getContentLength();
+        long length = getContentLengthLong();
+        return length > Integer.MAX_VALUE ? -1 : (int) length;
     }
 
+    /**
+     * 优先返回加密索引中记录的明文长度；旧的索引没有记录时，可跳转的记录按密文长度推算，其他记录返回记录本身的长度。
+     */
     @Override
     public long getContentLengthLong() {
-        return jarURLConnection.getContentLengthLong();
+        if (size >= 0) {
+            return size;
+        }
+        long length = jarURLConnection.getContentLengthLong();
+        return xDecryptor instanceof XSeekableDecryptor ? XSeekableInputStream.length(xKey, length) : length;
     }
 
     @Override
@@ -156,8 +188,19 @@ public class XJarURLConnection extends JarURLConnection {
 
     @Override
     public InputStream getInputStream() throws IOException {
-        InputStream in = jarURLConnection.getInputStream();
-        return xDecryptor.decrypt(xKey, in);
+        if (xResourceCache == null) {
+            InputStream in = jarURLConnection.getInputStream();
+            return xDecryptor.decrypt(xKey, in);
+        }
+        String key = jarURLConnection.getURL().getFile();
+        byte[] bytes = xResourceCache.get(key);
+        if (bytes == null) {
+            try (InputStream in = xDecryptor.decrypt(xKey, jarURLConnection.getInputStream())) {
+                bytes = XKit.read(in, size);
+            }
+            xResourceCache.put(key, bytes);
+        }
+        return new ByteArrayInputStream(bytes);
     }
 
     @Override
@@ -3,19 +3,19 @@ package io.xjar.jar;
 import io.xjar.XConstants;
 import io.xjar.XDecryptor;
 import io.xjar.XEncryptor;
+import io.xjar.XEntryIndex;
+import io.xjar.XIndexEntry;
+import io.xjar.XResourceCache;
+import io.xjar.XURLCache;
 import io.xjar.key.XKey;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.LineNumberReader;
 import java.net.JarURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLStreamHandler;
-import java.util.Enumeration;
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.zip.Deflater;
 
 /**
  * 加密的URL处理器
@@ -27,33 +27,69 @@ public class XJarURLHandler extends URLStreamHandler implements XConstants {
     private final XDecryptor xDecryptor;
     private final XEncryptor xEncryptor;
     private final XKey xKey;
-    private final Set<String> indexes;
+    private final XEntryIndex xEntryIndex;
+    private volatile XResourceCache xResourceCache;
+    private volatile XURLCache xURLCache;
 
     public XJarURLHandler(XDecryptor xDecryptor, XEncryptor xEncryptor, XKey xKey, ClassLoader classLoader) throws Exception {
+        this(xDecryptor, xEncryptor, xKey, new XEntryIndex(classLoader));
+    }
+
+    public XJarURLHandler(XDecryptor xDecryptor, XEncryptor xEncryptor, XKey xKey, XEntryIndex xEntryIndex) {
         this.xDecryptor = xDecryptor;
         this.xEncryptor = xEncryptor;
         this.xKey = xKey;
-        this.indexes = new LinkedHashSet<>();
-        Enumeration<URL> resources = classLoader.getResources(XJAR_INF_DIR + XJAR_INF_IDX);
-        while (resources.hasMoreElements()) {
-            URL resource = resources.nextElement();
-            String url = resource.toString();
-            String classpath = url.substring(0, url.lastIndexOf("!/") + 2);
-            InputStream in = resource.openStream();
-            InputStreamReader isr = new InputStreamReader(in);
-            LineNumberReader lnr = new LineNumberReader(isr);
-            String name;
-            while ((name = lnr.readLine()) != null) indexes.add(classpath + name);
-        }
+        this.xEntryIndex = xEntryIndex;
     }
 
     @Override
     protected URLConnection openConnection(URL url) throws IOException {
-        URLConnection urlConnection = new URL(url.toString()).openConnection();
-        return indexes.contains(url.toString())
-                && urlConnection instanceof JarURLConnection
-                ? new XJarURLConnection((JarURLConnection) urlConnection, xDecryptor, xEncryptor, xKey)
-                : urlConnection;
+        URLConnection urlConnection = delegate(url).openConnection();
+        XIndexEntry entry = xEntryIndex.get(url);
+        if (entry == null || !(urlConnection instanceof JarURLConnection)) {
+            return urlConnection;
+        }
+        JarURLConnection jarURLConnection = (JarURLConnection) urlConnection;
+        String mode = entry.getMode();
+        XDecryptor decryptor = XJarEntryMode.decryptor(mode, xDecryptor);
+        XEncryptor encryptor = XJarEntryMode.encryptor(mode, xEncryptor, Deflater.DEFAULT_COMPRESSION);
+        XResourceCache cache = !XJarEntryMode.isPartial(mode) && xResourceCache != null && xResourceCache.accepts(entry.getName()) ? xResourceCache : null;
+        return new XJarURLConnection(jarURLConnection, decryptor, encryptor, xKey, entry.getSize(), cache);
+    }
+
+    /**
+     * 取得用原始协议处理器打开连接的URL：由 {@link XURLCache} 包装的URL直接取回包装前的原始URL，其他的（如相对于包装后的URL构造的）重新解析。
+     */
+    @SuppressWarnings("deprecation")
+    private URL delegate(URL url) throws MalformedURLException {
+        XURLCache cache = this.xURLCache;
+        URL original = cache != null ? cache.unwrap(url) : null;
+        return original != null ? original : new URL(url.toString());
+    }
+
+    /**
+     * 指定包装URL的缓存，打开连接时直接使用缓存中包装前的原始URL
+     *
+     * @param xURLCache 包装URL的缓存
+     */
+    public void delegates(XURLCache xURLCache) {
+        this.xURLCache = xURLCache;
+    }
+
+    /**
+     * 指定解密后的资源内容缓存，只缓存默认模式和先压缩后加密的资源，可跳转和分块加密的资源本身就支持部分读取，不缓存。
+     *
+     * @param xResourceCache 解密后的资源内容缓存，为 {@code null} 时不缓存
+     */
+    public void cache(XResourceCache xResourceCache) {
+        this.xResourceCache = xResourceCache;
+    }
+
+    /**
+     * @return 解密后的资源内容缓存，没有指定时返回 {@code null}
+     */
+    public XResourceCache getResourceCache() {
+        return xResourceCache;
     }
 
 }
@@ -0,0 +1,137 @@
+package io.xjar.reflection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.Manifest;
+
+/**
+ * {@link URLClassLoader} 内部类路径 (ucp) 的访问器：构造时一次性把 ucp 的 getResource 和 Resource 的各个方法解析成
+ * {@link MethodHandle}，之后的调用不再经过 {@link Method#invoke(Object, Object...)} 的参数数组、装箱和访问检查。
+ * 没有签名的资源的 {@link CodeSource} 按类路径缓存，同一个类路径下的类共用同一个实例。
+ *
+ * @author kongweiguang
+ */
+public class XClassPath {
+    private final MethodHandle getResource;
+    private final MethodHandle getURL;
+    private final MethodHandle getInputStream;
+    private final MethodHandle getCodeSourceURL;
+    private final MethodHandle getCodeSigners;
+    private final MethodHandle getManifest;
+    private final ConcurrentMap<URL, CodeSource> codeSources = new ConcurrentHashMap<>();
+
+    public XClassPath(URLClassLoader classLoader) throws ReflectiveOperationException {
+        Object ucp = XReflection.field(URLClassLoader.class, "ucp").get(classLoader).value();
+        Method method = XReflection.method(ucp.getClass(), "getResource", String.class).method();
+        Class<?> resource = method.getReturnType();
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        this.getResource = lookup.unreflect(method).bindTo(ucp).asType(MethodType.methodType(Object.class, String.class));
+        this.getURL = handle(lookup, resource, "getURL", URL.class);
+        this.getInputStream = handle(lookup, resource, "getInputStream", InputStream.class);
+        this.getCodeSourceURL = handle(lookup, resource, "getCodeSourceURL", URL.class);
+        this.getCodeSigners = handle(lookup, resource, "getCodeSigners", CodeSigner[].class);
+        this.getManifest = handle(lookup, resource, "getManifest", Manifest.class);
+    }
+
+    private static MethodHandle handle(MethodHandles.Lookup lookup, Class<?> resource, String name, Class<?> type) throws ReflectiveOperationException {
+        Method method = XReflection.method(resource, name).method();
+        return lookup.unreflect(method).asType(MethodType.methodType(type, Object.class));
+    }
+
+    /**
+     * 在类路径中定位资源
+     *
+     * @param path 资源路径
+     * @return 资源，没有找到时返回 {@code null}
+     */
+    public Object getResource(String path) {
+        try {
+            return (Object) getResource.invokeExact(path);
+        } catch (Throwable t) {
+            throw unchecked(t);
+        }
+    }
+
+    /**
+     * @param resource 资源
+     * @return 资源URL
+     */
+    public URL getURL(Object resource) {
+        try {
+            return (URL) getURL.invokeExact(resource);
+        } catch (Throwable t) {
+            throw unchecked(t);
+        }
+    }
+
+    /**
+     * @param resource 资源
+     * @return 资源输入流
+     * @throws IOException I/O 异常
+     */
+    public InputStream getInputStream(Object resource) throws IOException {
+        try {
+            return (InputStream) getInputStream.invokeExact(resource);
+        } catch (IOException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw unchecked(t);
+        }
+    }
+
+    /**
+     * 取得资源的代码来源，需要在读取资源的内容之后调用，否则签名的JAR包中的资源取不到签名。
+     *
+     * @param resource 资源
+     * @return 代码来源，没有签名时为所在类路径共用的实例
+     */
+    public CodeSource getCodeSource(Object resource) {
+        URL url;
+        CodeSigner[] signers;
+        try {
+            url = (URL) getCodeSourceURL.invokeExact(resource);
+            signers = (CodeSigner[]) getCodeSigners.invokeExact(resource);
+        } catch (Throwable t) {
+            throw unchecked(t);
+        }
+        if (url == null || signers != null && signers.length > 0) {
+            return new CodeSource(url, signers);
+        }
+        return codeSources.computeIfAbsent(url, u -> new CodeSource(u, (CodeSigner[]) null));
+    }
+
+    /**
+     * @param resource 资源
+     * @return 资源所在JAR包的清单文件，没有清单文件或不在JAR包中时返回 {@code null}
+     * @throws IOException I/O 异常
+     */
+    public Manifest getManifest(Object resource) throws IOException {
+        try {
+            return (Manifest) getManifest.invokeExact(resource);
+        } catch (IOException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw unchecked(t);
+        }
+    }
+
+    private static RuntimeException unchecked(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
+    }
+}
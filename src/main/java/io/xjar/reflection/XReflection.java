@@ -35,7 +35,6 @@ public class XReflection {
                 method.setAccessible(true);
                 return new XMethod(method);
             } catch (NoSuchMethodException e) {
-                e.printStackTrace();
                 claxx = claxx.getSuperclass();
             }
         }
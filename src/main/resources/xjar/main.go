@@ -25,6 +25,7 @@ const (
 	validEndDate   = "#{validEndDate}"
 	hexKey         = "#{hexKey}"
 	hexIV          = "#{hexIV}"
+	licenseMode    = "#{licenseMode}"
 	code           = "#{code}"
 )
 
@@ -65,7 +66,12 @@ func readLicense() (*License, error) {
 
 	key, _ := hex.DecodeString(hexKey)
 	iv, _ := hex.DecodeString(hexIV)
-	plain, err := decryptAesCbc(cipherData, key, iv)
+	var plain []byte
+	if licenseMode == "GCM" {
+		plain, err = decryptAesGcm(cipherData, key)
+	} else {
+		plain, err = decryptAesCbc(cipherData, key, iv)
+	}
 
 	if err != nil {
 		return nil, fmt.Errorf("license error")
@@ -222,6 +228,25 @@ func decryptAesCbc(cipherData, key, iv []byte) ([]byte, error) {
 	return unPKCS5Padding(plain)
 }
 
+func decryptAesGcm(cipherData, key []byte) ([]byte, error) {
+	block, err := aes.NewCipher(key)
+	if err != nil {
+		return nil, fmt.Errorf("failed to create cipher")
+	}
+
+	aead, err := cipher.NewGCM(block)
+	if err != nil {
+		return nil, fmt.Errorf("failed to create gcm")
+	}
+
+	if len(cipherData) < aead.NonceSize() {
+		return nil, fmt.Errorf("ciphertext too short")
+	}
+
+	nonce, data := cipherData[:aead.NonceSize()], cipherData[aead.NonceSize():]
+	return aead.Open(nil, nonce, data, nil)
+}
+
 func unzip4Bytes(data []byte, dest string) error {
 	reader := bytes.NewReader(data)
 	zr, err := zip.NewReader(reader, int64(len(data)))
@@ -0,0 +1,79 @@
+import io.xjar.XCipherEngine;
+import io.xjar.XKit;
+import io.xjar.key.XKey;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Random;
+
+/**
+ * 每个记录的加密开销对比：每次都 {@link Cipher#getInstance(String)} 并重新构造密钥参数（原来的做法），
+ * 与通过 {@link XCipherEngine} 池化 {@link Cipher} 并缓存密钥参数，分别测试一次性加密和流式加密。
+ * <p>
+ * 用法：java CipherEngineBench [记录大小] [记录数] [轮数]
+ */
+public class CipherEngineBench {
+
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 2048;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        XKey key = XKit.key("password");
+        XCipherEngine engine = new XCipherEngine(Cipher.ENCRYPT_MODE);
+        byte[] entry = new byte[size];
+        new Random(0).nextBytes(entry);
+        byte[] buffer = new byte[8192];
+
+        for (int round = 0; round < rounds; round++) {
+            long begin = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                fresh(key).doFinal(entry);
+            }
+            long freshFinal = System.nanoTime() - begin;
+
+            begin = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                engine.doFinal(key, entry);
+            }
+            long pooledFinal = System.nanoTime() - begin;
+
+            begin = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                try (InputStream in = new CipherInputStream(new ByteArrayInputStream(entry), fresh(key))) {
+                    while (in.read(buffer) >= 0) {
+                        // 丢弃密文
+                    }
+                }
+            }
+            long freshStream = System.nanoTime() - begin;
+
+            begin = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                try (InputStream in = engine.wrap(key, new ByteArrayInputStream(entry))) {
+                    while (in.read(buffer) >= 0) {
+                        // 丢弃密文
+                    }
+                }
+            }
+            long pooledStream = System.nanoTime() - begin;
+
+            System.out.printf("round %d doFinal getInstance %6.2f us/entry pooled %6.2f us/entry | stream getInstance %6.2f us/entry pooled %6.2f us/entry%n",
+                    round, freshFinal / 1e3 / count, pooledFinal / 1e3 / count, freshStream / 1e3 / count, pooledStream / 1e3 / count);
+        }
+    }
+
+    /**
+     * 原来每个记录的做法：查找提供者、解析算法字符串并构造密钥参数
+     */
+    private static Cipher fresh(XKey key) throws Exception {
+        String algorithm = key.getAlgorithm();
+        Cipher cipher = Cipher.getInstance(algorithm);
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key.getEncryptKey(), algorithm.split("[/]")[0]), new IvParameterSpec(key.getIvParameter()));
+        return cipher;
+    }
+}
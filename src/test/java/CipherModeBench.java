@@ -0,0 +1,85 @@
+import io.xjar.XConstants;
+import io.xjar.XEncryptOptions;
+import io.xjar.XJdkDecryptor;
+import io.xjar.XJdkEncryptor;
+import io.xjar.XKit;
+import io.xjar.jar.XJarAllEntryFilter;
+import io.xjar.jar.XJarEncryptor;
+import io.xjar.key.XKey;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * 各加密算法的性能对比：构建时加密整个JAR包的吞吐量和运行时解密单个类的延迟，
+ * 对比 AES/CBC、AES/GCM 和 ChaCha20-Poly1305。
+ * <p>
+ * 用法：java CipherModeBench [类数量] [类大小] [轮数]
+ */
+public class CipherModeBench {
+
+    public static void main(String[] args) throws Exception {
+        int classes = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 4096;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        XKey[] keys = {
+                XKit.key("password"),
+                XKit.key(XConstants.ALGORITHM_AES_GCM, 128, 96, "password"),
+                XKit.key(XConstants.ALGORITHM_AES_GCM, 256, 96, "password"),
+                XKit.key(XConstants.ALGORITHM_CHACHA20_POLY1305, 256, 96, "password")
+        };
+        byte[] jar = jar(classes, size);
+        byte[] clazz = new byte[size];
+        new Random(1).nextBytes(clazz);
+
+        for (XKey key : keys) {
+            XJarEncryptor xJarEncryptor = new XJarEncryptor(new XJdkEncryptor(), new XJarAllEntryFilter(), new XEncryptOptions());
+            XJdkEncryptor xJdkEncryptor = new XJdkEncryptor();
+            XJdkDecryptor xJdkDecryptor = new XJdkDecryptor();
+            byte[] encrypted = xJdkEncryptor.encrypt(key, clazz);
+            for (int round = 0; round < rounds; round++) {
+                long begin = System.nanoTime();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(jar.length * 2);
+                xJarEncryptor.encrypt(key, new ByteArrayInputStream(jar), out);
+                long build = System.nanoTime() - begin;
+
+                int count = 20000;
+                begin = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    ByteBuffer decrypted = xJdkDecryptor.decrypt(key, ByteBuffer.wrap(encrypted));
+                    if (decrypted.remaining() != size) {
+                        throw new IOException("decrypted size mismatch");
+                    }
+                }
+                long decrypt = System.nanoTime() - begin;
+
+                System.out.printf("%-20s %3d round %d build %7.1f MB/s decrypt %6.2f us/class%n",
+                        key.getAlgorithm(), key.getKeysize(), round, jar.length * 1e3 / build, decrypt / 1e3 / count);
+            }
+        }
+    }
+
+    /**
+     * 生成包含 {@code classes} 个随机内容记录的原文包
+     */
+    private static byte[] jar(int classes, int size) throws IOException {
+        Random random = new Random(0);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (JarOutputStream jos = new JarOutputStream(bos)) {
+            byte[] bytes = new byte[size];
+            for (int i = 0; i < classes; i++) {
+                random.nextBytes(bytes);
+                jos.putNextEntry(new JarEntry("bench/C" + i + ".class"));
+                jos.write(bytes);
+                jos.closeEntry();
+            }
+        }
+        return bos.toByteArray();
+    }
+}
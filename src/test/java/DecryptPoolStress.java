@@ -0,0 +1,145 @@
+import io.xjar.XEncryptOptions;
+import io.xjar.XKit;
+import io.xjar.XJdkDecryptor;
+import io.xjar.XJdkEncryptor;
+import io.xjar.boot.XBootClassLoader;
+import io.xjar.jar.XJarAllEntryFilter;
+import io.xjar.jar.XJarEncryptor;
+import io.xjar.key.XKey;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * 解密线程池的并发压测：生成并加密一批类，多个线程按不同顺序同时加载，分别对比不开启和开启解密线程池时的吞吐量，
+ * 并校验每个类都能正确加载。
+ * <p>
+ * 用法：java DecryptPoolStress [类数量] [加载线程数] [解密线程数] [轮数]，运行时需要加上
+ * --add-opens java.base/java.net=ALL-UNNAMED --add-opens java.base/jdk.internal.loader=ALL-UNNAMED
+ */
+public class DecryptPoolStress {
+
+    public static void main(String[] args) throws Exception {
+        int classes = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int loaders = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+
+        Path dir = Files.createTempDirectory("xjar-stress");
+        try {
+            File plain = compile(dir, classes);
+            File encrypted = dir.resolve("encrypted.jar").toFile();
+            XKey key = XKit.key("stress");
+            new XJarEncryptor(new XJdkEncryptor(), new XJarAllEntryFilter(), new XEncryptOptions()).encrypt(key, plain, encrypted);
+
+            AtomicInteger bad = new AtomicInteger();
+            for (int round = 0; round < rounds; round++) {
+                for (int pool : new int[]{0, threads}) {
+                    XBootClassLoader classLoader = new XBootClassLoader(new URL[]{encrypted.toURI().toURL()}, DecryptPoolStress.class.getClassLoader().getParent(), new XJdkDecryptor(), new XJdkEncryptor(), key);
+                    classLoader.decrypt(pool);
+                    long millis = load(classLoader, classes, loaders, bad);
+                    System.out.println("round " + round + " pool=" + pool + " " + millis + "ms " + (classes * 1000L / Math.max(millis, 1)) + " classes/s"
+                            + (classLoader.getDecryptPool() != null ? " " + classLoader.getDecryptPool() : ""));
+                    classLoader.close();
+                }
+            }
+            System.out.println("bad=" + bad);
+            if (bad.get() > 0) {
+                System.exit(1);
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    /**
+     * 所有加载线程同时开始，各自按打乱后的顺序加载全部类，相同种子的线程顺序相同，用来制造同一个类的并发加载
+     *
+     * @return 全部线程加载完成的耗时，单位：毫秒
+     */
+    private static long load(ClassLoader classLoader, int classes, int loaders, AtomicInteger bad) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(loaders);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < loaders; t++) {
+                int seed = t % 4;
+                futures.add(executor.submit(() -> {
+                    List<Integer> ids = new ArrayList<>();
+                    for (int i = 0; i < classes; i++) {
+                        ids.add(i);
+                    }
+                    Collections.shuffle(ids, new Random(seed));
+                    start.await();
+                    for (int i : ids) {
+                        Object instance = classLoader.loadClass("stress.D" + i).getDeclaredConstructor().newInstance();
+                        if (!instance.toString().equals("d" + i)) {
+                            bad.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return (System.nanoTime() - begin) / 1000000;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 编译生成的类并打成原文包
+     */
+    private static File compile(Path dir, int classes) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("a JDK is required to generate the classes");
+        }
+        Path src = Files.createDirectories(dir.resolve("src/stress"));
+        Path out = Files.createDirectories(dir.resolve("classes"));
+        List<String> arguments = new ArrayList<>(List.of("-d", out.toString()));
+        for (int i = 0; i < classes; i++) {
+            Path source = src.resolve("D" + i + ".java");
+            Files.writeString(source, "package stress; public class D" + i + " { @Override public String toString() { return \"d" + i + "\"; } }", StandardCharsets.UTF_8);
+            arguments.add(source.toString());
+        }
+        if (compiler.run(null, null, null, arguments.toArray(new String[0])) != 0) {
+            throw new IllegalStateException("failed to compile the generated classes");
+        }
+        File jar = dir.resolve("plain.jar").toFile();
+        try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(jar))) {
+            for (int i = 0; i < classes; i++) {
+                jos.putNextEntry(new JarEntry("stress/D" + i + ".class"));
+                jos.write(Files.readAllBytes(out.resolve("stress/D" + i + ".class")));
+                jos.closeEntry();
+            }
+        }
+        return jar;
+    }
+}
@@ -0,0 +1,138 @@
+import io.xjar.XEntryFilter;
+import io.xjar.XFilters;
+import io.xjar.XKit;
+import io.xjar.filter.XAllEntryFilter;
+import io.xjar.filter.XAnyEntryFilter;
+import io.xjar.filter.XMixEntryFilter;
+import io.xjar.jar.XJarAntEntryFilter;
+import io.xjar.jar.XJarCompiledEntryFilter;
+import org.apache.commons.compress.archivers.jar.JarArchiveEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 编译后的过滤器与逐个使用正则表达式匹配的过滤器树的差分校验：随机生成过滤器树和记录名称，两者的结果必须完全一致。
+ * 同时校验自动机状态数超过上限后重建时结果不变，以及改写了匹配文本的ANT表达式过滤器子类不会被编译。
+ * <p>
+ * 用法：java FilterCompileCheck [过滤器树数量] [随机名称数量] [随机种子]
+ */
+public class FilterCompileCheck {
+    private static final String[] PATTERNS = {
+            "**/*.class", "org/example/**", "a?b", "/foo/", "***/x", "com/**/", "*", "**", "?", "a*b*c",
+            "x/**/y/*.txt", "**/", "**/**", "a.b", "a$b", "(x)", "[ab]", "é*/ü?", "*/", "/**/a/**/b/**"
+    };
+    private static final String ALPHABET = "abcxy/./é ü$\n\r\u0085 (x)[]*?\u0001";
+
+    public static void main(String[] args) {
+        int trees = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        Random random = new Random(seed);
+
+        List<JarArchiveEntry> entries = new ArrayList<>();
+        for (String pattern : PATTERNS) {
+            entries.add(new JarArchiveEntry(pattern.replace("*", "a")));
+        }
+        for (String name : Arrays.asList("org/example/A.class", "com/x/", "com/", "foo", "foo/", "x", "a/x", "a/b/x", "aab", "a\nb", "abc", "x/y/z.txt", "x/q/w/y/z.txt", "a/b", "/a/b/")) {
+            entries.add(new JarArchiveEntry(name));
+        }
+        for (int i = 0; i < count; i++) {
+            entries.add(new JarArchiveEntry(name(random, 1 + random.nextInt(14))));
+        }
+
+        int bad = 0;
+        for (int t = 0; t < trees; t++) {
+            XMixEntryFilter<JarArchiveEntry> tree = tree(random);
+            bad += compare("tree " + t, tree, entries);
+        }
+
+        // "倒数第 n 个字符是 a" 的确定性自动机有 2^n 个状态，长名称使状态数超过上限后重建
+        XMixEntryFilter<JarArchiveEntry> tree = XKit.any();
+        tree.mix(XFilters.ant("**a??????????????"));
+        List<JarArchiveEntry> longs = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder name = new StringBuilder();
+            for (int j = 0, length = 50 + random.nextInt(200); j < length; j++) {
+                name.append(random.nextBoolean() ? 'a' : 'b');
+            }
+            longs.add(new JarArchiveEntry(name.toString()));
+        }
+        bad += compare("long names", tree, longs);
+
+        // 改写了匹配文本的子类不能被编译
+        XAllEntryFilter<JarArchiveEntry> custom = XKit.all();
+        custom.mix(new XJarAntEntryFilter("**/*.class") {
+            @Override
+            protected String toText(JarArchiveEntry entry) {
+                return entry.getName().toLowerCase();
+            }
+        });
+        if (XJarCompiledEntryFilter.isCompilable(custom) || XFilters.compile(custom) != custom) {
+            System.out.println("MISMATCH subclass of XJarAntEntryFilter was compiled");
+            bad++;
+        }
+        XAllEntryFilter<JarArchiveEntry> regex = XKit.all();
+        regex.mix(XFilters.regex(".*"));
+        if (XFilters.compile(regex) != regex) {
+            System.out.println("MISMATCH regex filter was compiled");
+            bad++;
+        }
+
+        System.out.println("trees=" + trees + " entries=" + entries.size() + " bad=" + bad);
+        if (bad > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static int compare(String label, XEntryFilter<JarArchiveEntry> tree, List<JarArchiveEntry> entries) {
+        XEntryFilter<JarArchiveEntry> compiled = XFilters.compile(tree);
+        if (!(compiled instanceof XJarCompiledEntryFilter)) {
+            System.out.println("MISMATCH " + label + " was not compiled");
+            return 1;
+        }
+        int bad = 0;
+        for (JarArchiveEntry entry : entries) {
+            if (tree.filtrate(entry) != compiled.filtrate(entry)) {
+                if (bad++ < 10) {
+                    System.out.println("MISMATCH " + label + " " + entry.getName().replace("\n", "\\n"));
+                }
+            }
+        }
+        return bad;
+    }
+
+    /**
+     * 生成 include 为ANY、exclude 为NOT的ALL，两者再ALL连接的过滤器树，与 XEncryption 的 include/exclude 结构相同
+     */
+    private static XMixEntryFilter<JarArchiveEntry> tree(Random random) {
+        XAnyEntryFilter<JarArchiveEntry> include = XKit.any();
+        XAllEntryFilter<JarArchiveEntry> exclude = XKit.all();
+        int includes = random.nextInt(4);
+        int excludes = random.nextInt(4);
+        for (int i = 0; i < includes; i++) {
+            include.mix(XFilters.ant(PATTERNS[random.nextInt(PATTERNS.length)]));
+        }
+        for (int i = 0; i < excludes; i++) {
+            exclude.mix(XFilters.not(XFilters.ant(PATTERNS[random.nextInt(PATTERNS.length)])));
+        }
+        XMixEntryFilter<JarArchiveEntry> tree = XKit.all();
+        if (includes > 0) {
+            tree.mix(include);
+        }
+        if (excludes > 0) {
+            tree.mix(exclude);
+        }
+        return tree;
+    }
+
+    private static String name(Random random, int length) {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            name.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return name.toString();
+    }
+}
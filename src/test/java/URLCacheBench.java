@@ -0,0 +1,146 @@
+import io.xjar.XConstants;
+import io.xjar.XEncryptOptions;
+import io.xjar.XEntryIndex;
+import io.xjar.XJdkDecryptor;
+import io.xjar.XJdkEncryptor;
+import io.xjar.XKit;
+import io.xjar.XURLCache;
+import io.xjar.jar.XJarAllEntryFilter;
+import io.xjar.jar.XJarClassLoader;
+import io.xjar.jar.XJarEncryptor;
+import io.xjar.key.XKey;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * 资源URL缓存的并发吞吐量：多个线程同时通过 {@link XJarClassLoader} 的 getResource/getResources 查找加密包中的资源，
+ * 并对比直接包装URL时不缓存（容量为 0）与默认容量的 {@link XURLCache}。
+ * <p>
+ * 用法：java URLCacheBench [资源数] [线程数] [每个线程的查找轮数] [轮数]，运行时需要加上
+ * --add-opens java.base/java.net=ALL-UNNAMED --add-opens java.base/jdk.internal.loader=ALL-UNNAMED
+ */
+public class URLCacheBench {
+
+    public static void main(String[] args) throws Exception {
+        int resources = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int loops = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        File dir = Files.createTempDirectory("xjar-url").toFile();
+        File plain = new File(dir, "plain.jar");
+        File encrypted = new File(dir, "encrypted.jar");
+        try {
+            try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(plain))) {
+                for (int i = 0; i < resources; i++) {
+                    jos.putNextEntry(new JarEntry("bench/R" + i + ".txt"));
+                    jos.write(("resource " + i).getBytes());
+                    jos.closeEntry();
+                }
+            }
+            XKey key = XKit.key("password");
+            new XJarEncryptor(new XJdkEncryptor(), new XJarAllEntryFilter(), new XEncryptOptions()).encrypt(key, plain, encrypted);
+            URL[] urls = {encrypted.toURI().toURL()};
+            long lookups = (long) threads * loops * resources;
+
+            for (int round = 0; round < rounds; round++) {
+                try (XJarClassLoader classLoader = new XJarClassLoader(urls, null, new XJdkDecryptor(), new XJdkEncryptor(), key)) {
+                    long getResource = run(threads, () -> {
+                        for (int l = 0; l < loops; l++) {
+                            for (int i = 0; i < resources; i++) {
+                                if (classLoader.getResource("bench/R" + i + ".txt") == null) {
+                                    throw new IllegalStateException("missing resource " + i);
+                                }
+                            }
+                        }
+                        return null;
+                    });
+                    long getResources = run(threads, () -> {
+                        for (int l = 0; l < loops; l++) {
+                            for (int i = 0; i < resources; i++) {
+                                Enumeration<URL> enumeration = classLoader.getResources("bench/R" + i + ".txt");
+                                if (!enumeration.hasMoreElements() || enumeration.nextElement() == null) {
+                                    throw new IllegalStateException("missing resource " + i);
+                                }
+                            }
+                        }
+                        return null;
+                    });
+                    System.out.printf("round %d getResource %,12.0f lookups/s getResources %,12.0f lookups/s%n",
+                            round, lookups * 1e9 / getResource, lookups * 1e9 / getResources);
+                }
+
+                try (URLClassLoader classLoader = new URLClassLoader(urls, null)) {
+                    XEntryIndex xEntryIndex = new XEntryIndex(classLoader);
+                    URLStreamHandler handler = new URLStreamHandler() {
+                        @Override
+                        protected URLConnection openConnection(URL url) {
+                            return null;
+                        }
+                    };
+                    for (int capacity : new int[]{0, XConstants.DEFAULT_URL_CACHE_CAPACITY}) {
+                        XURLCache cache = new XURLCache(handler, xEntryIndex, capacity);
+                        long nanos = run(threads, () -> {
+                            for (int l = 0; l < loops; l++) {
+                                for (int i = 0; i < resources; i++) {
+                                    if (cache.wrap(classLoader.findResource("bench/R" + i + ".txt")) == null) {
+                                        throw new IllegalStateException("missing resource " + i);
+                                    }
+                                }
+                            }
+                            return null;
+                        });
+                        System.out.printf("round %d wrap capacity=%d %,12.0f lookups/s size=%d%n", round, capacity, lookups * 1e9 / nanos, cache.size());
+                    }
+                }
+            }
+        } finally {
+            plain.delete();
+            encrypted.delete();
+            dir.delete();
+        }
+    }
+
+    /**
+     * 所有线程同时开始执行同一个任务
+     *
+     * @return 全部线程完成的耗时，单位：纳秒
+     */
+    private static long run(int threads, Callable<Void> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+            return System.nanoTime() - begin;
+        } finally {
+            executor.shutdown();
+        }
+    }
+}